@@ -2,10 +2,12 @@ package ru.yandex.practicum.filmorate;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 /***Спасибо за ревью***/
 
+@EnableScheduling
 @SpringBootApplication
 public class FilmorateApplication {
 
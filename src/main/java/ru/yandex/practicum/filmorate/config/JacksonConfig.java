@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.config;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmField;
+
+@Configuration
+public class JacksonConfig {
+
+    //Фильтр полей фильма по умолчанию - ответ как без параметра fields.
+    //Запрос с fields подменяет его своим фильтром (см. FilmController)
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer filmFilterCustomizer() {
+        return builder -> builder.filters(new SimpleFilterProvider()
+                .addFilter(Film.FILTER, SimpleBeanPropertyFilter.serializeAllExcept(FilmField.LIKES.getProperty())));
+    }
+}
@@ -2,12 +2,13 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.service.DirectorService;
 
 import javax.validation.Valid;
-import java.util.List;
 
 @Slf4j
 @RestController
@@ -16,10 +17,12 @@ import java.util.List;
 public class DirectorController {
 
     private final DirectorService directorService;
+    private final ResponseBodyCache responseBodyCache;
 
     @GetMapping
-    public List<Director> getAllDirectors() {
-        return directorService.getDirectors();
+    public ResponseEntity<byte[]> getAllDirectors(WebRequest request) {
+        return responseBodyCache.get("/directors", directorService.getDirectorsTag(),
+                directorService::getDirectors, request);
     }
 
     @GetMapping("/{id}")
@@ -1,13 +1,29 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmField;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmPage;
+import ru.yandex.practicum.filmorate.model.FilmsByIds;
+import ru.yandex.practicum.filmorate.model.LikesBatchResult;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Slf4j
 @RestController
@@ -16,12 +32,40 @@ import java.util.List;
 public class FilmController {
 
     private final FilmService filmService;
+    private final JsonArrayWriter jsonArrayWriter;
+    private final ResponseBodyCache responseBodyCache;
 
+    //Списки популярных длиннее этого не кэшируются: count задает клиент, и большие тела вытесняли бы остальные
+    private static final int MAX_CACHED_POPULAR = 100;
+
+    //Список всех фильмов пишется в ответ потоком, по мере чтения из БД
     @GetMapping
-    public List<Film> getFilms() {
-        List<Film> films = filmService.getFilms();
-        log.debug("Список всех фильмов был выдан");
-        return films;
+    public ResponseEntity<StreamingResponseBody> getFilms() {
+        log.debug("Список всех фильмов выдается потоком");
+        return jsonArrayWriter.stream(filmService::forEachFilm);
+    }
+
+    @GetMapping(params = "limit")
+    public FilmPage getFilmPage(@RequestParam Integer limit,
+                                @RequestParam(required = false) String cursor) {
+        FilmPage page = filmService.getFilmPage(limit, cursor);
+        log.debug(String.format("Была выдана страница из %d фильмов", page.getFilms().size()));
+        return page;
+    }
+
+    //При ids вместе с limit выбор метода был бы неоднозначен - такой запрос считается запросом страницы
+    @GetMapping(params = {"ids", "!limit"})
+    public FilmsByIds getFilmsByIds(@RequestParam List<Integer> ids) {
+        FilmsByIds result = filmService.getFilmsByIds(ids);
+        log.debug(String.format("По списку id выдано %d фильмов, не найдено %d",
+                result.getFilms().size(), result.getMissing().size()));
+        return result;
+    }
+
+    //То же для длинных списков, которые не помещаются в URL
+    @PostMapping("/batch")
+    public FilmsByIds getFilmsByIdsBatch(@RequestBody List<Integer> ids) {
+        return getFilmsByIds(ids);
     }
 
     @PostMapping
@@ -38,8 +82,13 @@ public class FilmController {
         return saveFilm;
     }
 
+    //Если у клиента актуальная версия (If-None-Match), отвечаем 304 без загрузки фильма
     @GetMapping("/{id}")
-    public Film getFilm(@PathVariable Integer id) {
+    public Film getFilm(@PathVariable Integer id, WebRequest request) {
+        if (request.checkNotModified(filmService.getFilmTag(id))) {
+            log.debug(String.format("Фильм с id = %d не изменился", id));
+            return null;
+        }
         Film saveFilm = filmService.getFilm(id);
         log.debug(String.format("Фильм с id = %d был выдан", saveFilm.getId()));
         return saveFilm;
@@ -63,21 +112,82 @@ public class FilmController {
         log.debug(String.format("У фильма с id = %d был удален лайк", id));
     }
 
+    @PutMapping("/likes")
+    public LikesBatchResult addLikes(@RequestBody List<FilmLike> likes) {
+        LikesBatchResult result = filmService.addLikes(likes);
+        log.debug(String.format("Пакет лайков обработан: добавлено %d, повторных %d, не найдено %d",
+                result.getAdded(), result.getDuplicates().size(), result.getNotFound().size()));
+        return result;
+    }
+
+    //Готовое тело списка берется из кэша, пока не изменились фильмы, лайки или режиссёры.
+    //В ответе есть число лайков, поэтому тег меняется с каждым лайком: при частых лайках кэш
+    //почти не попадает, и хранятся только короткие списки - промах по ним обходится дешево
     @GetMapping("/popular")
-    public List<Film> getPopularFilm(@RequestParam(defaultValue = "10", required = false) Integer count,
-                                     @RequestParam(required = false) Integer genreId,
-                                     @RequestParam(required = false) Integer year) {                         
-        List<Film> films = filmService.getPopularFilm(count, genreId, year);
+    public ResponseEntity<byte[]> getPopularFilm(@RequestParam(defaultValue = "10", required = false) Integer count,
+                                                 @RequestParam(required = false) Integer genreId,
+                                                 @RequestParam(required = false) Integer year,
+                                                 @RequestParam(required = false) String fields,
+                                                 WebRequest request) {
+        //Сначала проверка параметров: на неверный запрос 400, даже если тег клиента совпал
+        filmService.checkPopularParams(count, genreId);
+        Set<FilmField> filmFields = filmService.parseFields(fields);
+        String tag = filmService.getPopularTag();
+        if (request.checkNotModified(ResponseBodyCache.etag(tag, request))) {
+            log.debug("Список популярных фильмов не изменился");
+            return null;
+        }
+        Supplier<MappingJacksonValue> body =
+                () -> project(filmService.getPopularFilm(count, genreId, year, filmFields), filmFields);
+        ResponseEntity<byte[]> response;
+        if (count <= MAX_CACHED_POPULAR) {
+            String key = String.format("/films/popular?count=%d&genreId=%s&year=%s&fields=%s",
+                    count, genreId, year, filmFields);
+            response = responseBodyCache.get(key, tag, body, request);
+        } else {
+            response = responseBodyCache.write(body.get(), request);
+        }
         log.debug(String.format("Был выдан список %d популярных фильмов", count));
+        return response;
+    }
+
+    @GetMapping("/popular/page")
+    public FilmPage getPopularFilmPage(@RequestParam(defaultValue = "10", required = false) Integer size,
+                                       @RequestParam(required = false) Integer genreId,
+                                       @RequestParam(required = false) Integer year,
+                                       @RequestParam(required = false) String cursor) {
+        FilmPage page = filmService.getPopularFilmPage(size, genreId, year, cursor);
+        log.debug(String.format("Была выдана страница из %d популярных фильмов", page.getFilms().size()));
+        return page;
+    }
+
+    @GetMapping("/trending")
+    public List<Film> getTrendingFilm(@RequestParam(defaultValue = "10", required = false) Integer count,
+                                      @RequestParam(defaultValue = "day", required = false) String period) {
+        List<Film> films = filmService.getTrendingFilm(count, period);
+        log.debug(String.format("Был выдан список %d трендовых фильмов за период %s", count, period));
         return films;
     }
 
     @GetMapping("/director/{directorId}")
-    public List<Film> getDirectorFilm(@PathVariable Integer directorId,
-                                      @RequestParam(defaultValue = "year", required = false) String sortBy) {
-        List<Film> films = filmService.getDirectorFilm(directorId, sortBy);
+    public MappingJacksonValue getDirectorFilm(@PathVariable Integer directorId,
+                                               @RequestParam(defaultValue = "year", required = false) String sortBy,
+                                               @RequestParam(required = false) String fields) {
+        Set<FilmField> filmFields = filmService.parseFields(fields);
+        List<Film> films = filmService.getDirectorFilm(directorId, sortBy, filmFields);
         log.debug(String.format("Был выдан список режиссёра %d, отсортированный по значению %s", directorId, sortBy));
-        return films;
+        return project(films, filmFields);
+    }
+
+    @GetMapping("/director/{directorId}/page")
+    public FilmPage getDirectorFilmPage(@PathVariable Integer directorId,
+                                        @RequestParam(defaultValue = "year", required = false) String sortBy,
+                                        @RequestParam(defaultValue = "10", required = false) Integer size,
+                                        @RequestParam(required = false) String cursor) {
+        FilmPage page = filmService.getDirectorFilmPage(directorId, sortBy, size, cursor);
+        log.debug(String.format("Была выдана страница фильмов режиссёра %d, отсортированная по значению %s",
+                directorId, sortBy));
+        return page;
     }
 
     @GetMapping("/common")
@@ -88,9 +198,38 @@ public class FilmController {
     }
 
     @GetMapping("/search")
-    public List<Film> getSearchedFilms(@RequestParam String query, @RequestParam String by) {
-        List<Film> films = filmService.getSearchedFilms(query, by);
+    public MappingJacksonValue getSearchedFilms(@RequestParam String query, @RequestParam String by,
+                                                @RequestParam(required = false) String fields) {
+        Set<FilmField> filmFields = filmService.parseFields(fields);
+        List<Film> films = filmService.getSearchedFilms(query, by, filmFields);
         log.debug(String.format("Был выдан список фильмов с поиском %s по значениям %s", query, by));
-        return films;
+        return project(films, filmFields);
+    }
+
+    @GetMapping("/cache/stats")
+    public CacheStats getCacheStats() {
+        return filmService.getCacheStats();
+    }
+
+    @GetMapping("/search/suggest")
+    public List<Suggestion> getSuggestions(@RequestParam String query,
+                                           @RequestParam(defaultValue = "title,director", required = false) String by,
+                                           @RequestParam(defaultValue = "10", required = false) Integer count) {
+        List<Suggestion> suggestions = filmService.getSuggestions(query, by, count);
+        log.debug(String.format("Было выдано %d подсказок для %s", suggestions.size(), query));
+        return suggestions;
+    }
+
+    //Без fields ответ прежний, с fields в JSON попадают только запрошенные поля
+    private MappingJacksonValue project(List<Film> films, Set<FilmField> fields) {
+        MappingJacksonValue value = new MappingJacksonValue(films);
+        if (!fields.equals(FilmField.DEFAULT)) {
+            Set<String> properties = fields.stream()
+                    .map(FilmField::getProperty)
+                    .collect(Collectors.toSet());
+            value.setFilters(new SimpleFilterProvider()
+                    .addFilter(Film.FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(properties)));
+        }
+        return value;
     }
 }
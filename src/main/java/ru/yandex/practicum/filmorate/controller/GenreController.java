@@ -2,15 +2,15 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.GenreService;
 
-import java.util.List;
-
 @Slf4j
 @RestController
 @RequestMapping("/genres")
@@ -18,6 +18,7 @@ import java.util.List;
 public class GenreController {
 
     private final GenreService genreService;
+    private final ResponseBodyCache responseBodyCache;
 
     @GetMapping("/{id}")
     public Genre getGenre(@PathVariable Integer id) {
@@ -27,8 +28,9 @@ public class GenreController {
     }
 
     @GetMapping
-    public List<Genre> getAllGenre() {
-        List<Genre> genres = genreService.getAllGenre();
+    public ResponseEntity<byte[]> getAllGenre(WebRequest request) {
+        ResponseEntity<byte[]> genres = responseBodyCache.get("/genres", ResponseBodyCache.STATIC,
+                genreService::getAllGenre, request);
         log.debug("Список всех Genre был выдан");
         return genres;
     }
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+//JSON-массив, который пишется в ответ по мере чтения из БД, а не собирается в памяти целиком.
+//source получает обработчик и передает в него элементы по одному
+@Component
+@RequiredArgsConstructor
+public class JsonArrayWriter {
+
+    private final ObjectMapper objectMapper;
+
+    public <T> ResponseEntity<StreamingResponseBody> stream(Consumer<Consumer<T>> source) {
+        //Без сброса после каждого элемента - буферизацию оставляем потоку ответа
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                source.accept(value -> {
+                    try {
+                        writer.writeValue(generator, value);
+                    } catch (IOException exp) {
+                        throw new UncheckedIOException(exp);
+                    }
+                });
+                generator.writeEndArray();
+            } catch (UncheckedIOException exp) {
+                throw exp.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+}
@@ -2,16 +2,15 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.service.MpaService;
 
-import java.util.List;
-
-
 @Slf4j
 @RestController
 @RequestMapping("/mpa")
@@ -19,6 +18,7 @@ import java.util.List;
 public class MpaController {
 
     private final MpaService mpaService;
+    private final ResponseBodyCache responseBodyCache;
 
     @GetMapping("/{id}")
     public Mpa getMpa(@PathVariable Integer id) {
@@ -28,8 +28,9 @@ public class MpaController {
     }
 
     @GetMapping
-    public List<Mpa> getAllMpa() {
-        List<Mpa> mpas = mpaService.getAllMpa();
+    public ResponseEntity<byte[]> getAllMpa(WebRequest request) {
+        ResponseEntity<byte[]> mpas = responseBodyCache.get("/mpa", ResponseBodyCache.STATIC,
+                mpaService::getAllMpa, request);
         log.debug("Список всех MPA был выдан");
         return mpas;
     }
@@ -0,0 +1,142 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+//Кэш готовых JSON-ответов для часто запрашиваемых списков: тело хранится уже сериализованным
+//и заранее сжатым, поэтому при попадании ответ - это запись готовых байт без Jackson.
+//Ключ - эндпоинт с параметрами, к записи приложена версия данных (см. VersionRegistry):
+//после записи в БД версия меняется, и старое тело просто перестает совпадать.
+//Вытеснение - LRU по числу записей
+@Slf4j
+@Component
+public class ResponseBodyCache {
+
+    //Версия для справочников жанров и MPA - они загружаются при старте и во время работы не меняются
+    public static final String STATIC = "static";
+
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+    private final Map<String, CachedBody> entries;
+
+    public ResponseBodyCache(ObjectMapper objectMapper,
+                             @Value("${filmorate.response-cache.max-entries:256}") int maxEntries) {
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+        //LinkedHashMap в режиме access-order: первый элемент - давно не использованный
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedBody> eldest) {
+                return size() > ResponseBodyCache.this.maxEntries;
+            }
+        };
+    }
+
+    //Тело ответа из кэша, если оно собрано для той же версии данных, иначе body сериализуется и кэшируется.
+    //Версию нужно получить до загрузки данных - тогда тело, собранное во время записи, останется при старой версии
+    public ResponseEntity<byte[]> get(String key, String version, Supplier<?> body, WebRequest request) {
+        CachedBody entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null || !entry.version.equals(version)) {
+            log.debug(String.format("Ответ %s собирается заново", key));
+            //Сериализация вне блокировки: одновременные промахи по одному ключу соберут тело дважды,
+            //зато не задержат остальные запросы
+            entry = new CachedBody(version, serialize(body.get()));
+            synchronized (this) {
+                entries.put(key, entry);
+            }
+        }
+        return respond(entry.json, acceptsGzip(request) ? entry.gzip : null);
+    }
+
+    //Тот же ответ без кэша - для запросов, тело которых слишком велико, чтобы его хранить
+    public ResponseEntity<byte[]> write(Object body, WebRequest request) {
+        byte[] json = serialize(body);
+        return respond(json, acceptsGzip(request) ? gzip(json) : null);
+    }
+
+    //Тег для условного GET по версии данных. Сжатое тело - другой набор байт, поэтому у него
+    //свой сильный тег: иначе кэш по пути к клиенту мог бы подставить одно представление вместо другого
+    public static String etag(String version, WebRequest request) {
+        if (!acceptsGzip(request)) {
+            return version;
+        }
+        return version.endsWith("\"")
+                ? version.substring(0, version.length() - 1) + "-gz\""
+                : version + "-gz";
+    }
+
+    private static boolean acceptsGzip(WebRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    private static ResponseEntity<byte[]> respond(byte[] json, byte[] gzip) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip != null) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzip);
+        }
+        return response.body(json);
+    }
+
+    private byte[] serialize(Object body) {
+        ObjectWriter writer = objectMapper.writer();
+        Object value = body;
+        //Проекция полей из MappingJacksonValue, без нее остается фильтр по умолчанию
+        if (body instanceof MappingJacksonValue) {
+            MappingJacksonValue projection = (MappingJacksonValue) body;
+            if (projection.getFilters() != null) {
+                writer = objectMapper.writer(projection.getFilters());
+            }
+            value = projection.getValue();
+        }
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException exp) {
+            throw new UncheckedIOException(exp);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException exp) {
+            throw new UncheckedIOException(exp);
+        }
+        return out.toByteArray();
+    }
+
+    private static class CachedBody {
+        private final String version;
+        private final byte[] json;
+        private final byte[] gzip;
+
+        private CachedBody(String version, byte[] json) {
+            this.version = version;
+            this.json = json;
+            this.gzip = gzip(json);
+        }
+    }
+}
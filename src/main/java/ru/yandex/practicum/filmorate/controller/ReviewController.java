@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.controller;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.service.ReviewService;
 
@@ -32,7 +33,11 @@ public class ReviewController {
     }
 
     @GetMapping("/{id}")
-    public Review getReview(@PathVariable Integer id) {
+    public Review getReview(@PathVariable Integer id, WebRequest request) {
+        if (request.checkNotModified(reviewService.getReviewTag(id))) {
+            log.debug(String.format("Отзыв с id = %d не изменился", id));
+            return null;
+        }
         Review saveReview = reviewService.getReview(id);
         log.debug(String.format("Отзыв с id = %d был выдан", saveReview.getReviewId()));
         return saveReview;
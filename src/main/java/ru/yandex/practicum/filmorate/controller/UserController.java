@@ -2,11 +2,21 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.DeletionJob;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendPath;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.FriendWithMutual;
+import ru.yandex.practicum.filmorate.model.RecommendedFilms;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserPage;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserDeletionService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
@@ -20,13 +30,22 @@ public class UserController {
 
     private final UserService userService;
     private final FilmService filmService;
+    private final JsonArrayWriter jsonArrayWriter;
+    private final UserDeletionService userDeletionService;
 
+    //Список всех пользователей пишется в ответ потоком, по мере чтения из БД
     @GetMapping
-    public List<User> getUsers() {
-        //Вызов функции через создание переменной для логирования данных
-        List<User> saveUsers = userService.getUsers();
-        log.debug("Список всех пользователей был выдан");
-        return saveUsers;
+    public ResponseEntity<StreamingResponseBody> getUsers() {
+        log.debug("Список всех пользователей выдается потоком");
+        return jsonArrayWriter.stream(userService::forEachUser);
+    }
+
+    @GetMapping(params = "limit")
+    public UserPage getUserPage(@RequestParam Integer limit,
+                                @RequestParam(required = false) String cursor) {
+        UserPage page = userService.getUserPage(limit, cursor);
+        log.debug(String.format("Была выдана страница из %d пользователей", page.getUsers().size()));
+        return page;
     }
 
     @GetMapping("/{id}")
@@ -49,6 +68,19 @@ public class UserController {
         log.debug(String.format("Пользователь с id = %d удален", id));
     }
 
+    //Массовое удаление выполняется в фоне: ответ 202 сразу, ход выполнения - GET /users/deletions/{jobId}
+    @PostMapping("/deletions")
+    public ResponseEntity<DeletionJob> startDeletion(@RequestBody List<Integer> ids) {
+        DeletionJob job = userDeletionService.startJob(ids);
+        log.debug(String.format("Создана задача удаления %d пользователей с id = %d", job.getTotal(), job.getJobId()));
+        return ResponseEntity.accepted().body(job);
+    }
+
+    @GetMapping("/deletions/{jobId}")
+    public DeletionJob getDeletion(@PathVariable Integer jobId) {
+        return userDeletionService.getJob(jobId);
+    }
+
     @PutMapping
     public User updateUser(@RequestBody @Valid User user) {
         User saveUser = userService.updateUser(user);
@@ -69,12 +101,26 @@ public class UserController {
     }
 
     @GetMapping("{id}/friends")
-    public List<User> getFriends(@PathVariable Integer id) {
+    public List<User> getFriends(@PathVariable Integer id, WebRequest request) {
+        if (request.checkNotModified(userService.getFriendsTag(id))) {
+            log.debug(String.format("Список друзей пользователя с id = %d не изменился", id));
+            return null;
+        }
         List<User> friends = userService.getFriends(id);
         log.debug(String.format("Пользователю с id = %d был выдан список друзей", id));
         return friends;
     }
 
+    //Друзья вместе с числом общих друзей - вместо отдельного запроса общих друзей на каждого друга.
+    //Без ETag: числа зависят от списков друзей самих друзей, а тег списка их не учитывает
+    @GetMapping(value = "{id}/friends", params = "withMutual=true")
+    public List<FriendWithMutual> getFriendsWithMutual(@PathVariable Integer id,
+                                                       @RequestParam(required = false) Integer viewerId) {
+        List<FriendWithMutual> friends = userService.getFriendsWithMutual(id, viewerId);
+        log.debug(String.format("Пользователю с id = %d был выдан список друзей с числом общих друзей", id));
+        return friends;
+    }
+
     @GetMapping("/{id}/friends/common/{otherId}")
     public List<User> getCommonFriends(@PathVariable Integer id, @PathVariable Integer otherId) {
         List<User> common = userService.getCommonFriends(id, otherId);
@@ -82,10 +128,37 @@ public class UserController {
         return common;
     }
 
+    //Возможные знакомые: друзья друзей по убыванию числа общих друзей
+    @GetMapping("{id}/suggestions")
+    public List<FriendSuggestion> getFriendSuggestions(@PathVariable Integer id,
+                                                       @RequestParam(defaultValue = "10", required = false)
+                                                       Integer count) {
+        List<FriendSuggestion> suggestions = userService.getFriendSuggestions(id, count);
+        log.debug(String.format("Пользователю с id = %d было предложено %d возможных знакомых",
+                id, suggestions.size()));
+        return suggestions;
+    }
+
+    //Кратчайшая цепочка друзей от id до otherId, глубина сверху ограничена настройкой приложения
+    @GetMapping("{id}/path/{otherId}")
+    public FriendPath getFriendPath(@PathVariable Integer id, @PathVariable Integer otherId,
+                                    @RequestParam(defaultValue = "6", required = false) Integer maxDepth) {
+        FriendPath path = userService.getFriendPath(id, otherId, maxDepth);
+        log.debug(String.format("Для пользователей с id = %d и %d выдана цепочка дружбы длиной %s",
+                id, otherId, path.getDegrees()));
+        return path;
+    }
+
     @GetMapping("{id}/recommendations")
-    public List<Film> getUserRecommendations(@PathVariable Integer id) {
+    public ResponseEntity<List<Film>> getUserRecommendations(@PathVariable Integer id,
+                                                             @RequestParam(defaultValue = "10", required = false)
+                                                             Integer count) {
         log.info(String.format("Запрос рекомендаций для пользователя id = %d", id));
-        return filmService.getUserRecommendations(id);
+        RecommendedFilms recommendations = filmService.getUserRecommendations(id, count);
+        //Рекомендации считаются в фоне - момент пересчета отдаем в Last-Modified, тело ответа прежнее
+        return ResponseEntity.ok()
+                .lastModified(recommendations.getComputedAt())
+                .body(recommendations.getFilms());
     }
 
     @GetMapping("{id}/feed")
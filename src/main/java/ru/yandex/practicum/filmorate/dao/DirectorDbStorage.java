@@ -6,16 +6,19 @@ import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exception.CountOfResultNotExpectedException;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.index.FilmCache;
+import ru.yandex.practicum.filmorate.index.ReferenceRegistry;
+import ru.yandex.practicum.filmorate.index.SearchIndex;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
 
+import javax.annotation.PostConstruct;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -28,9 +31,36 @@ import java.util.stream.Collectors;
 public class DirectorDbStorage implements DirectorStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final SearchIndex searchIndex;
+    private final FilmCache filmCache;
+    private final ReferenceRegistry referenceRegistry;
+
+    @PostConstruct
+    public void loadDirectors() {
+        log.debug("Запрос к БД на загрузку режиссёров в справочник и поисковый индекс");
+        List<Director> all = jdbcTemplate.query("SELECT * FROM DIRECTORS", DirectorDbStorage::makeDirector);
+        referenceRegistry.loadDirectors(all);
+
+        Map<Integer, String> directors = new HashMap<>();
+        all.forEach(director -> directors.put(director.getId(), director.getName()));
+
+        Map<Integer, List<Integer>> films = new HashMap<>();
+        jdbcTemplate.query("SELECT FILM_ID, DIRECTOR_ID FROM FILMS_DIRECTORS", rs -> {
+            films.computeIfAbsent(rs.getInt("FILM_ID"), id -> new ArrayList<>()).add(rs.getInt("DIRECTOR_ID"));
+        });
+
+        searchIndex.loadDirectors(directors, films);
+    }
 
     @Override
     public Director getDirectorById(int id) {
+        Director cached = referenceRegistry.getDirector(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        //Режиссёра могли добавить в БД в обход этого класса - ищем в БД и запоминаем
         log.debug("Запрос к БД на выдачу режиссёра");
         final String sqlQuery = "SELECT * " +
                 "FROM DIRECTORS " +
@@ -46,6 +76,7 @@ public class DirectorDbStorage implements DirectorStorage {
             throw new CountOfResultNotExpectedException("Количество полученных режиссёров не совпадает с ожидаемым");
         }
 
+        referenceRegistry.putDirector(directors.get(0));
         return directors.get(0);
     }
 
@@ -54,7 +85,10 @@ public class DirectorDbStorage implements DirectorStorage {
         log.debug("Отправляем запрос на всех режиссёров из БД");
         final String sqlQuery = "SELECT * FROM DIRECTORS";
 
-        return jdbcTemplate.query(sqlQuery, DirectorDbStorage::makeDirector);
+        //Полный список все равно читается из БД - заодно сверяем с ним справочник
+        List<Director> directors = jdbcTemplate.query(sqlQuery, DirectorDbStorage::makeDirector);
+        referenceRegistry.loadDirectors(directors);
+        return directors;
     }
 
     @Override
@@ -73,6 +107,8 @@ public class DirectorDbStorage implements DirectorStorage {
         );
 
         director.setId(Objects.requireNonNull(keyHolder.getKey()).intValue());
+        searchIndex.putDirector(director.getId(), director.getName());
+        referenceRegistry.putDirector(director);
         return director;
     }
 
@@ -90,6 +126,9 @@ public class DirectorDbStorage implements DirectorStorage {
         if (result == 0) {
             throw new EntityNotFoundException(String.format("Режиссёр с id = %d не найден в базе", id));
         }
+        searchIndex.putDirector(id, director.getName());
+        referenceRegistry.putDirector(director);
+        filmCache.invalidateDirector(id);
         return director;
     }
 
@@ -100,6 +139,9 @@ public class DirectorDbStorage implements DirectorStorage {
                 "WHERE DIRECTOR_ID = ?";
 
         jdbcTemplate.update(sqlQuery, id);
+        searchIndex.removeDirector(id);
+        referenceRegistry.removeDirector(id);
+        filmCache.invalidateDirector(id);
     }
 
     public void setFilmDirector(Film film) {
@@ -110,6 +152,9 @@ public class DirectorDbStorage implements DirectorStorage {
 
         jdbcTemplate.update(sqlQuery, id);
         ArrayList<Director> directors = new ArrayList<>(film.getDirectors());
+        List<Integer> directorIds = directors.stream().map(Director::getId).collect(Collectors.toList());
+        searchIndex.setFilmDirectors(id, directorIds);
+        filmCache.invalidate(id);
 
         // Если режиссёров нет, то сохранять их не надо
         if (directors.isEmpty()) {
@@ -132,58 +177,26 @@ public class DirectorDbStorage implements DirectorStorage {
                     }
                 }
         );
-    }
-
-    public Film loadFilmDirector(Film film) {
-        log.debug("Запрос к БД на загрузку режиссёров");
-        final String sqlQuery = "SELECT *" +
-                "FROM FILMS_DIRECTORS F " +
-                "INNER JOIN DIRECTORS D on D.DIRECTOR_ID = F.DIRECTOR_ID " +
-                "WHERE FILM_ID = ? ";
-
-        final List<Director> directors = jdbcTemplate.query(sqlQuery, DirectorDbStorage::makeDirector, film.getId());
-        film.setDirectors(new LinkedHashSet<>(directors));
-        return film;
-    }
-
-    public List<Film> loadFilmsDirector(List<Film> films) {
-        log.debug("Запрос к БД на загрузку режиссёров для нескольких фильмов");
-        List<Integer> ids = films.stream().map(Film::getId).collect(Collectors.toList());
-
-        Map<Integer, Film> filmMap = new LinkedHashMap<>();
-        for (Film f : films) {
-            filmMap.put(f.getId(), f);
+        //Между удалением и вставкой фильм мог попасть в кэш без режиссёров - сбрасываем еще раз
+        filmCache.invalidate(id);
+
+        //Режиссёр мог появиться в БД в обход этого класса - тогда имя для поиска берем из БД
+        List<Integer> unknown = directorIds.stream()
+                .filter(directorId -> !searchIndex.hasDirector(directorId))
+                .collect(Collectors.toList());
+        if (!unknown.isEmpty()) {
+            namedJdbcTemplate.query("SELECT DIRECTOR_ID, DIRECTOR_NAME " +
+                            "FROM DIRECTORS WHERE DIRECTOR_ID IN (:ids)", new MapSqlParameterSource("ids", unknown),
+                    rs -> {
+                        searchIndex.putDirector(rs.getInt("DIRECTOR_ID"), rs.getString("DIRECTOR_NAME"));
+                    });
         }
-
-        SqlParameterSource parameters = new MapSqlParameterSource("ids", ids);
-        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
-
-        String sqlQuery = "SELECT * " +
-                "FROM FILMS_DIRECTORS F " +
-                "INNER JOIN DIRECTORS D on D.DIRECTOR_ID = F.DIRECTOR_ID " +
-                "WHERE FILM_ID IN (:ids)";
-
-        namedJdbcTemplate.query(sqlQuery, parameters, (rs, rowNum) ->
-                filmMap.get(rs.getInt("FILM_ID"))
-                        .getDirectors()
-                        .add(makeDirector(rs, rowNum)));
-
-        return new ArrayList<>(filmMap.values());
     }
 
     @Override
     public void isContains(Integer id) {
-        // Используем часть запроса метода get(Integer id).
-        //Этого хватает для проверки наличия режиссёра
-        final String simpleQuery = "SELECT *" +
-                "FROM DIRECTORS " +
-                "WHERE DIRECTOR_ID = ? ";
-
-        final List<Director> directors = jdbcTemplate.query(simpleQuery, DirectorDbStorage::makeDirector, id);
-
-        if (directors.size() == 0) {
-            throw new EntityNotFoundException(String.format("Режиссёр с id = %d не найден в базе", id));
-        }
+        //Сначала справочник, при промахе - запрос к БД (и там же ошибка, если режиссёра нет)
+        getDirectorById(id);
     }
 
     private static Director makeDirector(ResultSet rs, int rowNum) throws SQLException {
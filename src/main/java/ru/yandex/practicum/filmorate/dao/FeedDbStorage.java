@@ -7,6 +7,7 @@ import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.EventOperation;
 import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -50,6 +51,17 @@ public class FeedDbStorage {
                 String.valueOf(EventOperation.ADD), filmId);
     }
 
+    public void addLikes(List<FilmLike> likes) {
+        log.debug(String.format("Запрос к БД на %d новостей о добавлении лайка к фильму", likes.size()));
+
+        jdbcTemplate.batchUpdate(SQL_FEED, likes, likes.size(), (ps, like) -> {
+            ps.setInt(1, like.getUserId());
+            ps.setString(2, String.valueOf(EventType.LIKE));
+            ps.setString(3, String.valueOf(EventOperation.ADD));
+            ps.setInt(4, like.getFilmId());
+        });
+    }
+
     public void removeLike(Integer filmId, Integer userId) {
         log.debug("Запрос к БД на новость об удалении лайка к фильму");
 
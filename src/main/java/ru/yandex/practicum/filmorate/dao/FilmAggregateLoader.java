@@ -0,0 +1,332 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.index.IntObjectMap;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.index.ReferenceRegistry;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmField;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import javax.annotation.PreDestroy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+//Загрузка фильмов целиком (с MPA, жанрами и режиссёрами) одним запросом.
+//Жанры и режиссёры присоединяются LEFT JOIN, поэтому на фильм приходится несколько строк
+//(жанры x режиссёры) - фильм собирается из них за один проход по результату.
+//Раньше на это уходило три запроса: фильмы, жанры, режиссёры.
+//Из таблиц связей берутся только id - названия MPA, жанров и имена режиссёров подставляются из ReferenceRegistry.
+//Для неполных фильмов (параметр fields) читаются только нужные столбцы, а ненужные связи не присоединяются.
+//Длинные списки id делятся на пачки по chunkSize: для каждой пачки фильмы, жанры и режиссёры
+//читаются отдельными запросами параллельно в ограниченном пуле потоков и затем собираются вместе
+@Slf4j
+@Repository
+public class FilmAggregateLoader {
+
+    private static final Set<FilmField> ALL_FIELDS = EnumSet.allOf(FilmField.class);
+    private static final Map<FilmField, String> COLUMNS = Map.of(
+            FilmField.NAME, "F.FILM_NAME",
+            FilmField.DESCRIPTION, "F.FILM_DESCRIPTION",
+            FilmField.RELEASE_DATE, "F.RELEASE_DATE",
+            FilmField.DURATION, "F.DURATION",
+            FilmField.MPA, "F.MPA_ID");
+
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final ReferenceRegistry referenceRegistry;
+    private final PopularityIndex popularityIndex;
+    private final int chunkSize;
+    private final ThreadPoolExecutor executor;
+
+    public FilmAggregateLoader(NamedParameterJdbcTemplate namedJdbcTemplate, ReferenceRegistry referenceRegistry,
+                               PopularityIndex popularityIndex,
+                               @Value("${filmorate.films.hydration-chunk-size:500}") int chunkSize,
+                               @Value("${filmorate.films.hydration-threads:4}") int threads) {
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.referenceRegistry = referenceRegistry;
+        this.popularityIndex = popularityIndex;
+        this.chunkSize = chunkSize;
+        //Очередь ограничена: когда она заполнена, запрос выполняет сам вызывающий поток, а не копит их в памяти
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 16),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "film-hydration");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public Optional<Film> loadById(int id) {
+        log.debug(String.format("Запрос к БД на выдачу фильма %d с жанрами и режиссёрами", id));
+        return load("WHERE F.FILM_ID = :id ", new MapSqlParameterSource("id", id), ALL_FIELDS)
+                .stream()
+                .findFirst();
+    }
+
+    //Порядок результата - как у ids, отсутствующие id пропускаются
+    public List<Film> loadByIds(List<Integer> ids) {
+        return loadByIds(ids, ALL_FIELDS);
+    }
+
+    //Только поля fields, у остальных - null (у жанров и режиссёров - пустые множества)
+    public List<Film> loadByIds(List<Integer> ids, Set<FilmField> fields) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        IntObjectMap<Film> films;
+        if (ids.size() <= chunkSize) {
+            log.debug(String.format("Запрос к БД на выдачу фильмов по списку id с полями %s", fields));
+            films = new IntObjectMap<>(ids.size());
+            for (Film film : load("WHERE F.FILM_ID IN (:ids) ", new MapSqlParameterSource("ids", ids), fields)) {
+                films.put(film.getId(), film);
+            }
+        } else {
+            films = loadChunked(ids, fields);
+        }
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    public List<Film> loadAll() {
+        log.debug("Запрос к БД на все фильмы с жанрами и режиссёрами");
+        return load("", new MapSqlParameterSource(), ALL_FIELDS);
+    }
+
+    private IntObjectMap<Film> loadChunked(List<Integer> ids, Set<FilmField> fields) {
+        log.debug(String.format("Запрос к БД на выдачу %d фильмов пачками по %d с полями %s",
+                ids.size(), chunkSize, fields));
+        boolean withGenres = fields.contains(FilmField.GENRES);
+        boolean withDirectors = fields.contains(FilmField.DIRECTORS);
+        Set<FilmField> filmFields = EnumSet.noneOf(FilmField.class);
+        filmFields.addAll(fields);
+        filmFields.removeAll(EnumSet.of(FilmField.GENRES, FilmField.DIRECTORS));
+
+        //Все запросы всех пачек ставятся в пул сразу - жанры и режиссёры читаются одновременно с фильмами
+        List<Future<List<Film>>> filmTasks = new ArrayList<>();
+        List<Future<IntPairs>> genreTasks = new ArrayList<>();
+        List<Future<IntPairs>> directorTasks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            SqlParameterSource params = new MapSqlParameterSource("ids",
+                    new ArrayList<>(ids.subList(from, Math.min(from + chunkSize, ids.size()))));
+            filmTasks.add(executor.submit(() -> load("WHERE F.FILM_ID IN (:ids) ", params, filmFields)));
+            if (withGenres) {
+                genreTasks.add(executor.submit(() -> loadLinks("SELECT FILM_ID, GENRE_ID FROM FILMS_GENRE " +
+                        "WHERE FILM_ID IN (:ids) ORDER BY FILM_ID, GENRE_ID", params)));
+            }
+            if (withDirectors) {
+                directorTasks.add(executor.submit(() -> loadLinks("SELECT FILM_ID, DIRECTOR_ID FROM FILMS_DIRECTORS " +
+                        "WHERE FILM_ID IN (:ids) ORDER BY FILM_ID, DIRECTOR_ID", params)));
+            }
+        }
+
+        IntObjectMap<Film> films = new IntObjectMap<>(ids.size());
+        for (Future<List<Film>> task : filmTasks) {
+            await(task).forEach(film -> films.put(film.getId(), film));
+        }
+        for (Future<IntPairs> task : genreTasks) {
+            IntPairs genres = await(task);
+            for (int i = 0; i < genres.size(); i++) {
+                Film film = films.get(genres.first(i));
+                if (film != null) {
+                    Genre genre = referenceRegistry.getGenre(genres.second(i));
+                    film.getGenres().add(new Genre(genres.second(i), genre == null ? null : genre.getName()));
+                }
+            }
+        }
+        IntPairs directors = new IntPairs();
+        for (Future<IntPairs> task : directorTasks) {
+            directors.addAll(await(task));
+        }
+        addDirectors(films, directors);
+        return films;
+    }
+
+    private List<Film> load(String condition, SqlParameterSource params, Set<FilmField> fields) {
+        boolean withGenres = fields.contains(FilmField.GENRES);
+        boolean withDirectors = fields.contains(FilmField.DIRECTORS);
+        StringJoiner columns = new StringJoiner(", ", "SELECT ", " ");
+        columns.add("F.FILM_ID");
+        COLUMNS.forEach((field, column) -> {
+            if (fields.contains(field)) {
+                columns.add(column);
+            }
+        });
+        //Строки одного фильма идут подряд, жанры и режиссёры внутри фильма - по возрастанию id
+        StringJoiner order = new StringJoiner(", ");
+        order.add("F.FILM_ID");
+        StringBuilder from = new StringBuilder("FROM FILMS F ");
+        if (withGenres) {
+            columns.add("FG.GENRE_ID");
+            order.add("FG.GENRE_ID");
+            from.append("LEFT JOIN FILMS_GENRE FG ON FG.FILM_ID = F.FILM_ID ");
+        }
+        if (withDirectors) {
+            columns.add("FD.DIRECTOR_ID");
+            order.add("FD.DIRECTOR_ID");
+            from.append("LEFT JOIN FILMS_DIRECTORS FD ON FD.FILM_ID = F.FILM_ID ");
+        }
+
+        List<Film> films = new ArrayList<>();
+        IntObjectMap<Film> filmsById = new IntObjectMap<>(16);
+        IntPairs directors = new IntPairs();
+        //Строки читаются потоком: фильм создается по первой своей строке, остальные только дополняют жанры/режиссёров
+        String sqlQuery = columns + from.toString() + condition + "ORDER BY " + order;
+        namedJdbcTemplate.query(sqlQuery, params, rs -> {
+            int filmId = rs.getInt("FILM_ID");
+            Film film = filmsById.get(filmId);
+            if (film == null) {
+                film = makeFilm(rs, fields);
+                films.add(film);
+                filmsById.put(filmId, film);
+            }
+            if (withGenres) {
+                int genreId = rs.getInt("GENRE_ID");
+                if (!rs.wasNull()) {
+                    Genre genre = referenceRegistry.getGenre(genreId);
+                    film.getGenres().add(new Genre(genreId, genre == null ? null : genre.getName()));
+                }
+            }
+            if (withDirectors) {
+                int directorId = rs.getInt("DIRECTOR_ID");
+                if (!rs.wasNull()) {
+                    //Из-за произведения жанры x режиссёры один режиссёр повторяется в строках каждого жанра -
+                    //повторы отсеет множество режиссёров фильма
+                    directors.add(filmId, directorId);
+                }
+            }
+        });
+        addDirectors(filmsById, directors);
+        return films;
+    }
+
+    //Пары (id фильма, id жанра/режиссёра) из таблицы связей
+    private IntPairs loadLinks(String sqlQuery, SqlParameterSource params) {
+        IntPairs links = new IntPairs();
+        namedJdbcTemplate.query(sqlQuery, params, rs -> {
+            links.add(rs.getInt(1), rs.getInt(2));
+        });
+        return links;
+    }
+
+    //Режиссёров, добавленных в БД в обход DirectorDbStorage, в справочнике нет - дочитываем их одним запросом
+    private void addDirectors(IntObjectMap<Film> films, IntPairs links) {
+        Set<Integer> unknown = new HashSet<>();
+        for (int i = 0; i < links.size(); i++) {
+            if (referenceRegistry.getDirector(links.second(i)) == null) {
+                unknown.add(links.second(i));
+            }
+        }
+        if (!unknown.isEmpty()) {
+            log.debug("Запрос к БД на режиссёров, которых нет в справочнике");
+            namedJdbcTemplate.query("SELECT DIRECTOR_ID, DIRECTOR_NAME FROM DIRECTORS WHERE DIRECTOR_ID IN (:ids)",
+                    new MapSqlParameterSource("ids", unknown),
+                    rs -> {
+                        referenceRegistry.putDirector(new Director(rs.getInt("DIRECTOR_ID"),
+                                rs.getString("DIRECTOR_NAME")));
+                    });
+        }
+        for (int i = 0; i < links.size(); i++) {
+            Film film = films.get(links.first(i));
+            Director director = referenceRegistry.getDirector(links.second(i));
+            if (film != null && director != null) {
+                film.getDirectors().add(new Director(director.getId(), director.getName()));
+            }
+        }
+    }
+
+    private static <T> T await(Future<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Загрузка фильмов прервана", exp);
+        } catch (ExecutionException exp) {
+            if (exp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exp.getCause();
+            }
+            throw new IllegalStateException(exp.getCause());
+        }
+    }
+
+    private Film makeFilm(ResultSet rs, Set<FilmField> fields) throws SQLException {
+        Film film = new Film();
+        film.setId(rs.getInt("FILM_ID"));
+        if (fields.contains(FilmField.NAME)) {
+            film.setName(rs.getString("FILM_NAME"));
+        }
+        if (fields.contains(FilmField.DESCRIPTION)) {
+            film.setDescription(rs.getString("FILM_DESCRIPTION"));
+        }
+        if (fields.contains(FilmField.RELEASE_DATE)) {
+            film.setReleaseDate(rs.getDate("RELEASE_DATE").toLocalDate());
+        }
+        if (fields.contains(FilmField.DURATION)) {
+            film.setDuration(rs.getInt("DURATION"));
+        }
+        if (fields.contains(FilmField.MPA)) {
+            int mpaId = rs.getInt("MPA_ID");
+            Mpa mpa = referenceRegistry.getMpa(mpaId);
+            film.setMpa(new Mpa(mpaId, mpa == null ? null : mpa.getName()));
+        }
+        //FILMS.LIKES обновляется отложенно (FilmLikesBuffer) - актуальное число лайков только в рейтинге
+        if (fields.contains(FilmField.LIKES)) {
+            film.setLikes(popularityIndex.getLikes(film.getId()));
+        }
+        film.setGenres(new LinkedHashSet<>());
+        film.setDirectors(new LinkedHashSet<>());
+        return film;
+    }
+
+    //Растущий массив пар int без упаковки: [первый0, второй0, первый1, второй1, ...]
+    private static class IntPairs {
+
+        private int[] values = new int[32];
+        private int size;
+
+        private void add(int first, int second) {
+            if (size * 2 + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size * 2] = first;
+            values[size * 2 + 1] = second;
+            size++;
+        }
+
+        private void addAll(IntPairs other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.first(i), other.second(i));
+            }
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private int first(int i) {
+            return values[i * 2];
+        }
+
+        private int second(int i) {
+            return values[i * 2 + 1];
+        }
+    }
+}
@@ -3,22 +3,44 @@ package ru.yandex.practicum.filmorate.dao;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
-import ru.yandex.practicum.filmorate.exception.CountOfResultNotExpectedException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import ru.yandex.practicum.filmorate.exception.DuplicateLikeException;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.index.AfterCommit;
+import ru.yandex.practicum.filmorate.index.FilmCache;
+import ru.yandex.practicum.filmorate.index.LikeIndex;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.index.PresenceIndex;
+import ru.yandex.practicum.filmorate.index.RecommendationStore;
+import ru.yandex.practicum.filmorate.index.SearchIndex;
+import ru.yandex.practicum.filmorate.index.TrendingIndex;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.FilmCursor;
+import ru.yandex.practicum.filmorate.model.FilmField;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.RecommendedFilms;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 
 @Slf4j
@@ -27,6 +49,55 @@ import java.util.*;
 public class FilmDbStorage implements FilmStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final PopularityIndex popularityIndex;
+    private final FilmLikesBuffer filmLikesBuffer;
+    private final TrendingIndex trendingIndex;
+    private final LikeIndex likeIndex;
+    private final RecommendationStore recommendationStore;
+    private final SearchIndex searchIndex;
+    private final FilmAggregateLoader filmAggregateLoader;
+    private final FilmCache filmCache;
+    private final PresenceIndex presenceIndex;
+
+    //Выдача всех фильмов потоком: по сколько фильмов читается и загружается целиком за раз
+    @Value("${filmorate.stream.chunk-size:200}")
+    private int chunkSize;
+
+    @PostConstruct
+    public void loadIndexes() {
+        //Счетчик LIKES пишется отложенно (FilmLikesBuffer) - после перезапуска сверяем его с FILMS_LIKES
+        log.debug("Запрос к БД на пересчет LIKES по таблице лайков");
+        jdbcTemplate.update("UPDATE FILMS F SET LIKES = " +
+                "(SELECT COUNT(*) FROM FILMS_LIKES L WHERE L.FILM_ID = F.FILM_ID)");
+
+        log.debug("Запрос к БД на загрузку рейтинга популярности фильмов");
+
+        Map<Integer, Integer> likes = new HashMap<>();
+        Map<Integer, Integer> years = new HashMap<>();
+        Map<Integer, String> titles = new HashMap<>();
+        jdbcTemplate.query("SELECT FILM_ID, FILM_NAME, LIKES, RELEASE_DATE FROM FILMS", rs -> {
+            likes.put(rs.getInt("FILM_ID"), rs.getInt("LIKES"));
+            years.put(rs.getInt("FILM_ID"), rs.getDate("RELEASE_DATE").toLocalDate().getYear());
+            titles.put(rs.getInt("FILM_ID"), rs.getString("FILM_NAME"));
+        });
+
+        Map<Integer, Set<Integer>> genres = new HashMap<>();
+        jdbcTemplate.query("SELECT FILM_ID, GENRE_ID FROM FILMS_GENRE", rs -> {
+            genres.computeIfAbsent(rs.getInt("FILM_ID"), id -> new HashSet<>()).add(rs.getInt("GENRE_ID"));
+        });
+
+        popularityIndex.load(likes, years, genres);
+        searchIndex.loadFilms(titles);
+        presenceIndex.getFilms().load(titles.keySet());
+
+        log.debug("Запрос к БД на загрузку индекса лайков");
+        Map<Integer, List<Integer>> likesByFilm = new HashMap<>();
+        jdbcTemplate.query("SELECT FILM_ID, USER_ID FROM FILMS_LIKES", rs -> {
+            likesByFilm.computeIfAbsent(rs.getInt("FILM_ID"), id -> new ArrayList<>()).add(rs.getInt("USER_ID"));
+        });
+        likeIndex.load(likesByFilm);
+    }
 
     @Override
     public Film add(Film film) {
@@ -49,6 +120,9 @@ public class FilmDbStorage implements FilmStorage {
         Integer id = Objects.requireNonNull(keyHolder.getKey()).intValue();
 
         film.setId(id);
+        popularityIndex.addFilm(id, film.getReleaseDate().getYear());
+        searchIndex.putFilm(id, film.getName());
+        presenceIndex.getFilms().add(id);
         return film;
     }
 
@@ -59,28 +133,34 @@ public class FilmDbStorage implements FilmStorage {
         final String sqlQuery = "DELETE FROM FILMS " +
                 "WHERE FILM_ID = ? ";
 
+        //Отзывы на фильм удалятся каскадно - запоминаем их, чтобы убрать из индекса наличия
+        List<Integer> reviews = jdbcTemplate.queryForList("SELECT REVIEW_ID FROM REVIEWS WHERE FILM_ID = ?",
+                Integer.class, id);
         jdbcTemplate.update(sqlQuery, id);
+        presenceIndex.getFilms().remove(id);
+        reviews.forEach(presenceIndex.getReviews()::remove);
+        popularityIndex.removeFilm(id);
+        filmCache.invalidate(id);
+        trendingIndex.removeFilm(id);
+        likeIndex.removeFilm(id);
+        searchIndex.removeFilm(id);
+        filmLikesBuffer.discard(id);
     }
 
     @Override
     public Film get(Integer id) {
-        log.debug("Запрос к БД на выдачу фильма");
-
-        final String sqlQuery = "SELECT *" +
-                "FROM FILMS " +
-                "INNER JOIN MPA M ON M.MPA_ID = FILMS.MPA_ID " +
-                "WHERE FILM_ID = ? ";
-
-        final List<Film> films = jdbcTemplate.query(sqlQuery, FilmDbStorage::makeFilm, id);
-
-        if (films.size() == 0) {
-            throw new EntityNotFoundException(String.format("Фильм с id = %d не найден в базе", id));
+        Optional<Film> cached = filmCache.get(id);
+        if (cached.isPresent()) {
+            return cached.get();
         }
 
-        if (films.size() != 1) {
-            throw new CountOfResultNotExpectedException("Количество полученных фильмов не совпадает с ожидаемым");
-        }
-        return films.get(0);
+        log.debug("Запрос к БД на выдачу фильма");
+        long modifications = filmCache.getModifications();
+        //Фильм сразу с жанрами и режиссёрами - одним запросом
+        Film film = filmAggregateLoader.loadById(id).orElseThrow(() ->
+                new EntityNotFoundException(String.format("Фильм с id = %d не найден в базе", id)));
+        filmCache.put(film, modifications);
+        return film;
     }
 
     @Override
@@ -100,211 +180,417 @@ public class FilmDbStorage implements FilmStorage {
             throw new EntityNotFoundException(String.format("Фильм с id = %d не найден в базе", id));
         }
 
+        popularityIndex.updateYear(id, film.getReleaseDate().getYear());
+        filmCache.invalidate(id);
+        searchIndex.putFilm(id, film.getName());
         return film;
     }
 
     @Override
     public List<Film> getAll() {
         log.debug("Отправляем запрос на все фильмы из БД");
+        return filmAggregateLoader.loadAll();
+    }
+
+    @Override
+    public void forEachFilm(Consumer<Film> consumer) {
+        log.debug("Потоковый запрос к БД на все фильмы");
+        //id читаются страницами по chunkSize, и каждая пачка загружается целиком уже после того,
+        //как запрос страницы закрыт: соединение не держится, пока ответ пишется клиенту
+        List<Film> chunk = getFilmPage(chunkSize, null);
+        while (!chunk.isEmpty()) {
+            chunk.forEach(consumer);
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+            chunk = getFilmPage(chunkSize, chunk.get(chunk.size() - 1).getId());
+        }
+    }
 
-        final String sqlQuery = "SELECT *" +
+    @Override
+    public List<Film> getFilmPage(Integer size, Integer afterId) {
+        log.debug("Запрос к БД на страницу фильмов");
+        final String sqlQuery = "SELECT FILM_ID " +
                 "FROM FILMS " +
-                "INNER JOIN MPA M on M.MPA_ID = FILMS.MPA_ID ";
+                "WHERE FILM_ID > ? " +
+                "ORDER BY FILM_ID " +
+                "LIMIT ?";
 
-        return jdbcTemplate.query(sqlQuery, FilmDbStorage::makeFilm);
+        return getFilmsByIds(jdbcTemplate.queryForList(sqlQuery, Integer.class,
+                afterId == null ? 0 : afterId, size));
     }
 
     @Override
     public void addLike(Integer id, Integer idUser) {
         log.debug("Запрос к БД на добавление лайка");
+        //Время лайка берем из часов приложения, а не из БД: по нему же вклад лайка уберется из трендов
+        long now = System.currentTimeMillis();
         //Этот запрос для учета информации "кто поставил лайк"
         try {
-            final String sqlQuery = "INSERT INTO FILMS_LIKES(FILM_ID, USER_ID) "
-                    + "VALUES(?, ?)";
+            final String sqlQuery = "INSERT INTO FILMS_LIKES(FILM_ID, USER_ID, LIKED_AT) "
+                    + "VALUES(?, ?, ?)";
 
-            jdbcTemplate.update(sqlQuery, id, idUser);
+            jdbcTemplate.update(sqlQuery, id, idUser, new Timestamp(now));
 
         } catch (DuplicateKeyException exp) {
             throw new DuplicateLikeException(String.format("Лайк фильму с id = %d от пользователя с id = %d уже был поставлен", id, idUser));
         }
 
-        //Будем учитывать количество лайков сразу в таблице с фильмами
-        final String likeQuery = "UPDATE FILMS SET LIKES = LIKES + 1 " +
-                "WHERE FILM_ID = ?";
-
-        jdbcTemplate.update(likeQuery, id);
+        //Количество лайков учитываем в таблице с фильмами, но не сразу:
+        //изменение копится в памяти и сбрасывается в FILMS.LIKES пачкой, чтобы не блокировать строку фильма
+        filmLikesBuffer.add(id, 1);
+        popularityIndex.changeLikes(id, 1);
+        trendingIndex.addLike(id, now);
+        likeIndex.addLike(idUser, id);
     }
 
     @Override
     public void removeLike(Integer id, Integer idUser) {
         log.debug("Запрос к БД на удаление лайка");
 
-        final String sqlQuery = "DELETE FROM FILMS_LIKES " +
+        //Время лайка нужно, чтобы убрать его вклад из рейтинга трендов
+        final String sqlLikedAt = "SELECT LIKED_AT " +
+                "FROM FILMS_LIKES " +
                 "WHERE FILM_ID = ? AND USER_ID = ?";
 
-        jdbcTemplate.update(sqlQuery, id, idUser);
+        List<Timestamp> likedAt = jdbcTemplate.queryForList(sqlLikedAt, Timestamp.class, id, idUser);
 
-        final String likeQuery = "UPDATE FILMS SET LIKES = LIKES - 1 " +
-                "WHERE FILM_ID = ?";
+        final String sqlQuery = "DELETE FROM FILMS_LIKES " +
+                "WHERE FILM_ID = ? AND USER_ID = ?";
 
-        jdbcTemplate.update(likeQuery, id);
+        //Если лайка не было - счетчик не трогаем
+        if (likedAt.isEmpty() || jdbcTemplate.update(sqlQuery, id, idUser) == 0) {
+            return;
+        }
+
+        filmLikesBuffer.add(id, -1);
+        popularityIndex.changeLikes(id, -1);
+        likeIndex.removeLike(idUser, id);
+        if (likedAt.get(0) != null) {
+            //Сохраненная копия рейтинга трендов еще содержит этот лайк - при восстановлении его нужно вычесть
+            jdbcTemplate.update("INSERT INTO FILMS_LIKES_REMOVED(FILM_ID, LIKED_AT, REMOVED_AT) VALUES (?, ?, ?)",
+                    id, likedAt.get(0), new Timestamp(System.currentTimeMillis()));
+            trendingIndex.removeLike(id, likedAt.get(0).getTime());
+        }
     }
 
+    //Своя транзакция, если вызвано не из FilmService.addLikes: откат к точке сохранения нужен в любом случае
     @Override
-    public List<Film> getPopularFilm(Integer count, Integer genreId, Integer year) {
-        log.debug("Запрос к БД на топ популярных фильмов");
-        //При одинаковом количестве лайков выдаем в порядке ASC id
-        String genreFilter = "";
-        String yearFilter = "";
-        if (genreId != null) {
-            genreFilter = "JOIN FILMS_GENRE FG on FILMS.FILM_ID = FG.FILM_ID " +
-                    "WHERE FG.GENRE_ID = " + genreId + " ";
+    @Transactional
+    public List<FilmLike> addLikes(List<FilmLike> likes) {
+        log.debug(String.format("Запрос к БД на пакетное добавление %d лайков", likes.size()));
+
+        Set<Integer> filmIds = likes.stream().map(FilmLike::getFilmId).collect(Collectors.toSet());
+        Set<Integer> userIds = likes.stream().map(FilmLike::getUserId).collect(Collectors.toSet());
+
+        //Одним запросом узнаем, какие из пар уже есть в базе
+        final String sqlExisting = "SELECT FILM_ID, USER_ID " +
+                "FROM FILMS_LIKES " +
+                "WHERE FILM_ID IN (:filmIds) AND USER_ID IN (:userIds)";
+
+        Set<FilmLike> existing = new HashSet<>(namedJdbcTemplate.query(sqlExisting,
+                new MapSqlParameterSource("filmIds", filmIds).addValue("userIds", userIds),
+                (rs, rowNum) -> new FilmLike(rs.getInt("FILM_ID"), rs.getInt("USER_ID"))));
+
+        //Повторы внутри самого пакета тоже отбрасываем
+        List<FilmLike> toInsert = new ArrayList<>();
+        for (FilmLike like : likes) {
+            if (existing.add(like)) {
+                toInsert.add(like);
+            }
+        }
+
+        if (toInsert.isEmpty()) {
+            return toInsert;
         }
-        if (year != null) {
-            if (genreId != null) {
-                yearFilter = "AND EXTRACT(YEAR FROM FILMS.RELEASE_DATE) = " + year + " ";
-            } else {
-                yearFilter = "WHERE EXTRACT(YEAR FROM FILMS.RELEASE_DATE) = " + year + " ";
+
+        final String sqlQuery = "INSERT INTO FILMS_LIKES(FILM_ID, USER_ID, LIKED_AT) "
+                + "VALUES(?, ?, ?)";
+
+        long now = System.currentTimeMillis();
+        Timestamp likedAt = new Timestamp(now);
+        List<FilmLike> inserted;
+        //При повторе пакет не останавливается на ошибочной строке, и остальные строки остаются вставленными.
+        //Откатываемся к точке сохранения, чтобы при вставке по одному они не сочлись чужими повторами
+        TransactionStatus transaction = TransactionAspectSupport.currentTransactionStatus();
+        Object savepoint = transaction.createSavepoint();
+        try {
+            jdbcTemplate.batchUpdate(sqlQuery, toInsert, toInsert.size(), (PreparedStatement ps, FilmLike like) -> {
+                ps.setInt(1, like.getFilmId());
+                ps.setInt(2, like.getUserId());
+                ps.setTimestamp(3, likedAt);
+            });
+            transaction.releaseSavepoint(savepoint);
+            inserted = toInsert;
+        } catch (DuplicateKeyException exp) {
+            //Кто-то успел поставить такой же лайк между проверкой и вставкой - добавляем по одному
+            transaction.rollbackToSavepoint(savepoint);
+            inserted = new ArrayList<>();
+            for (FilmLike like : toInsert) {
+                try {
+                    jdbcTemplate.update(sqlQuery, like.getFilmId(), like.getUserId(), likedAt);
+                    inserted.add(like);
+                } catch (DuplicateKeyException ignored) {
+                    log.debug(String.format("Лайк фильму с id = %d от пользователя с id = %d уже был поставлен",
+                            like.getFilmId(), like.getUserId()));
+                }
             }
         }
 
-        final String sqlQuery = "SELECT* " +
-                "FROM FILMS " +
-                "INNER JOIN MPA M on M.MPA_ID = FILMS.MPA_ID " +
-                genreFilter +
-                yearFilter +
-                "ORDER BY LIKES DESC, FILMS.FILM_ID " +
-                "LIMIT ?";
+        //Одно изменение счетчика на фильм, а не на каждый лайк
+        Map<Integer, Integer> perFilm = new HashMap<>();
+        for (FilmLike like : inserted) {
+            perFilm.merge(like.getFilmId(), 1, Integer::sum);
+        }
+        //Пакет пишется в одной транзакции с событиями ленты - счетчики и индексы меняем после фиксации
+        List<FilmLike> added = inserted;
+        AfterCommit.run(() -> {
+            perFilm.forEach((filmId, count) -> {
+                filmLikesBuffer.add(filmId, count);
+                popularityIndex.changeLikes(filmId, count);
+            });
+            added.forEach(like -> {
+                trendingIndex.addLike(like.getFilmId(), now);
+                likeIndex.addLike(like.getUserId(), like.getFilmId());
+            });
+        });
+
+        return inserted;
+    }
+
+    @Override
+    public List<Film> getPopularFilm(Integer count, Integer genreId, Integer year) {
+        return getPopularFilm(count, genreId, year, FilmField.DEFAULT);
+    }
+
+    @Override
+    public List<Film> getPopularFilm(Integer count, Integer genreId, Integer year, Set<FilmField> fields) {
+        log.debug("Выдача топа популярных фильмов из рейтинга в памяти");
+        //Рейтинг поддерживается при добавлении/удалении фильмов и лайков, в БД идем только за самими фильмами
+        return getFilmsByIds(popularityIndex.getTop(count, genreId, year), fields);
+    }
 
-        return jdbcTemplate.query(sqlQuery, FilmDbStorage::makeFilm, count);
+    @Override
+    public List<Film> getPopularFilmPage(Integer size, Integer genreId, Integer year, FilmCursor after) {
+        log.debug("Выдача страницы популярных фильмов из рейтинга в памяти");
+
+        //Курсор строится по лайкам фильма - кэш и загрузчик берут их из того же рейтинга
+        return after == null
+                ? getFilmsByIds(popularityIndex.getTop(size, genreId, year))
+                : getFilmsByIds(popularityIndex.getTopAfter(size, genreId, year, (int) after.getKey(),
+                after.getFilmId()));
+    }
+
+    @Override
+    public List<Film> getTrendingFilm(Integer count, TrendingPeriod period) {
+        log.debug(String.format("Выдача трендовых фильмов за период %s из рейтинга в памяти", period));
+        return getFilmsByIds(trendingIndex.getTop(period, count));
     }
 
     @Override
     public List<Film> getFilmsByDirector(Integer directorId, String sortBy) {
+        return getFilmsByDirector(directorId, sortBy, FilmField.DEFAULT);
+    }
+
+    @Override
+    public List<Film> getFilmsByDirector(Integer directorId, String sortBy, Set<FilmField> fields) {
         log.debug("Запрос к БД на фильмы конкретного режиссёра");
 
-        String sortingCriteria = "";
+        if (sortBy.equals("likes")) {
+            return getFilmsByIds(sortByLikes(getDirectorFilmIds(directorId)), fields);
+        }
+        String sortingCriteria = "F.FILM_ID";
         if (sortBy.equals("year")) {
-            sortingCriteria = "ORDER BY RELEASE_DATE, FILMS.FILM_ID";
-        } else if (sortBy.equals("likes")) {
-            sortingCriteria = "ORDER BY LIKES DESC, FILMS.FILM_ID";
+            sortingCriteria = "F.RELEASE_DATE, F.FILM_ID";
+        }
+        //При одинаковом количестве лайков или равндом годе выдаем в порядке ASC id.
+        //Сначала id в нужном порядке, затем сами фильмы - так работают кэш и выборка полей
+        final String sqlQuery = "SELECT F.FILM_ID FROM FILMS F " +
+                "JOIN FILMS_DIRECTORS FD ON FD.FILM_ID = F.FILM_ID " +
+                "WHERE FD.DIRECTOR_ID = ? " +
+                "ORDER BY " + sortingCriteria;
+        return getFilmsByIds(jdbcTemplate.queryForList(sqlQuery, Integer.class, directorId), fields);
+    }
+
+    @Override
+    public List<Film> getFilmsByDirectorPage(Integer directorId, String sortBy, Integer size, FilmCursor after) {
+        log.debug("Запрос к БД на страницу фильмов конкретного режиссёра");
+
+        //Лайки - из рейтинга в памяти: по ним же строится курсор. FILMS.LIKES отстает на интервал сброса,
+        //и страница по нему могла бы потерять или повторить фильм. Фильмов у режиссёра немного - сортируем в памяти
+        if (sortBy.equals("likes")) {
+            return getFilmsByIds(sortByLikes(getDirectorFilmIds(directorId)).stream()
+                    .filter(filmId -> after == null || isAfter(filmId, after))
+                    .limit(size)
+                    .collect(Collectors.toList()));
+        }
+
+        //Следующая страница - поиск по ключу сортировки, а не OFFSET: стоимость не растет с глубиной
+        String seekCriteria = "";
+        List<Object> params = new ArrayList<>();
+        params.add(directorId);
+        if (after != null) {
+            Date releaseDate = Date.valueOf(LocalDate.ofEpochDay(after.getKey()));
+            seekCriteria = "AND (RELEASE_DATE > ? OR (RELEASE_DATE = ? AND FILMS.FILM_ID > ?)) ";
+            params.addAll(List.of(releaseDate, releaseDate, after.getFilmId()));
         }
-        //При одинаковом количестве лайков или равндом годе выдаем в порядке ASC id
-        final String sqlQuery = "SELECT * FROM FILMS " +
-                "INNER JOIN MPA M on M.MPA_ID = FILMS.MPA_ID " +
+        String sortingCriteria = "ORDER BY RELEASE_DATE, FILMS.FILM_ID ";
+        params.add(size);
+
+        //LIMIT нужен по фильмам, а не по строкам с жанрами и режиссёрами -
+        //поэтому сначала id страницы, затем сами фильмы
+        final String sqlQuery = "SELECT FILMS.FILM_ID FROM FILMS " +
                 "JOIN FILMS_DIRECTORS FD on FD.FILM_ID = FILMS.FILM_ID " +
                 "WHERE FD.DIRECTOR_ID = ? " +
-                sortingCriteria;
-        return jdbcTemplate.query(sqlQuery, FilmDbStorage::makeFilm, directorId);
-    }
-
-    private static Film makeFilm(ResultSet rs, int rowNum) throws SQLException {
-        return new Film(
-                rs.getInt("FILM_ID"),
-                rs.getString("FILM_NAME"),
-                rs.getString("FILM_DESCRIPTION"),
-                rs.getDate("RELEASE_DATE").toLocalDate(),
-                rs.getInt("DURATION"),
-                new Mpa(rs.getInt("MPA_ID"), rs.getString("MPA_NAME")),
-                new LinkedHashSet<>(),
-                new LinkedHashSet<>()
-        );
-    }
-
-    private static Film makeSimpleFilm(ResultSet rs, int rowNum) throws SQLException {
-        return new Film(
-                rs.getInt("FILM_ID"),
-                rs.getString("FILM_NAME"),
-                rs.getString("FILM_DESCRIPTION"),
-                rs.getDate("RELEASE_DATE").toLocalDate(),
-                rs.getInt("DURATION"),
-                new Mpa(),
-                new LinkedHashSet<>(),
-                new LinkedHashSet<>()
-        );
+                seekCriteria +
+                sortingCriteria +
+                "LIMIT ?";
+        return getFilmsByIds(jdbcTemplate.queryForList(sqlQuery, Integer.class, params.toArray()));
+    }
+
+    //Фильмы только с полями fields, в порядке ids. Подходят и целые фильмы из кэша,
+    //а недостающие читаются из БД без лишних столбцов и связей - и в кэш не кладутся, потому что неполные
+    private List<Film> getFilmsByIds(List<Integer> ids, Set<FilmField> fields) {
+        if (fields.containsAll(FilmField.DEFAULT)) {
+            return getFilmsByIds(ids);
+        }
+        Map<Integer, Film> films = filmCache.getAll(ids);
+        List<Integer> missing = ids.stream()
+                .filter(id -> !films.containsKey(id))
+                .collect(Collectors.toList());
+        filmAggregateLoader.loadByIds(missing, fields).forEach(film -> films.put(film.getId(), film));
+
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
+    //Фильмы целиком, в порядке ids. Что есть в кэше - берем оттуда, остальное одним запросом.
+    //Id, для которых фильма нет, в ответ просто не попадают
     @Override
-    public void isContains(Integer id) {
-        // Используем часть запроса метода get(Integer id).
-        //Этого хватает для проверки наличия фильма и не надо загружать жанры и Mpa
-        final String simpleQuery = "SELECT *" +
-                "FROM FILMS " +
-                "WHERE FILM_ID = ? ";
+    public List<Film> getFilmsByIds(List<Integer> ids) {
+        Map<Integer, Film> films = filmCache.getAll(ids);
+        List<Integer> missing = ids.stream()
+                .filter(id -> !films.containsKey(id))
+                .collect(Collectors.toList());
+
+        if (!missing.isEmpty()) {
+            long modifications = filmCache.getModifications();
+            for (Film film : filmAggregateLoader.loadByIds(missing)) {
+                filmCache.put(film, modifications);
+                films.put(film.getId(), film);
+            }
+        }
+
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
 
-        final List<Film> films = jdbcTemplate.query(simpleQuery, FilmDbStorage::makeSimpleFilm, id);
+    @Override
+    public CacheStats getCacheStats() {
+        return filmCache.getStats();
+    }
 
-        if (films.size() == 0) {
+    @Override
+    public void isContains(Integer id) {
+        //Проверка по индексу наличия, в БД - только для id, о которых индекс еще не знает
+        if (!presenceIndex.getFilms().contains(id, this::isExistsInDb)) {
             throw new EntityNotFoundException(String.format("Фильм с id = %d не найден в базе", id));
         }
     }
 
+    private boolean isExistsInDb(int id) {
+        log.debug(String.format("Запрос к БД на наличие фильма %d", id));
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM FILMS WHERE FILM_ID = ?",
+                Integer.class, id);
+        return count != null && count > 0;
+    }
+
     @Override
-    public List<Film> getUserRecommendations(Integer id) {
-        log.debug(String.format("Отправляем запрос на рекомендации для пользователя с id = %d из БД", id));
-        final String sqlQuery = "SELECT * " +
+    public Set<Integer> getExistingIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        final String sqlQuery = "SELECT FILM_ID " +
                 "FROM FILMS " +
-                "INNER JOIN MPA M on M.MPA_ID = FILMS.MPA_ID " +
-                "WHERE FILM_ID IN " +
-                "( SELECT FILM_ID " +
-                "FROM FILMS_LIKES " +
-                "EXCEPT " +
-                "SELECT FILM_ID " +
-                "FROM FILMS_LIKES " +
-                "WHERE USER_ID = ? )";
+                "WHERE FILM_ID IN (:ids)";
+
+        return new HashSet<>(namedJdbcTemplate.queryForList(sqlQuery, new MapSqlParameterSource("ids", ids),
+                Integer.class));
+    }
+
+    @Override
+    public List<Film> getUserRecommendations(Integer id, Integer count) {
+        log.debug(String.format("Выдача %d рекомендаций для пользователя с id = %d из индекса лайков", count, id));
+        return getFilmsByIds(Arrays.stream(likeIndex.getRecommendations(id, count)).boxed()
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public RecommendedFilms getMaterializedRecommendations(Integer id, Integer count) {
+        RecommendationStore.Recommendations stored = recommendationStore.get(id);
+        //Список обрезан до размера хранилища, а просят больше - считаем по запросу
+        if (stored == null || (count > stored.getFilms().length
+                && stored.getFilms().length >= recommendationStore.getSize())) {
+            return new RecommendedFilms(getUserRecommendations(id, count), System.currentTimeMillis());
+        }
 
-        return jdbcTemplate.query(sqlQuery, FilmDbStorage::makeFilm, id);
+        log.debug(String.format("Выдача %d готовых рекомендаций для пользователя с id = %d", count, id));
+        //Фильмы, лайкнутые после пересчета, уже не рекомендуем
+        List<Integer> ids = Arrays.stream(stored.getFilms())
+                .filter(filmId -> !likeIndex.hasLike(id, filmId))
+                .limit(count)
+                .boxed()
+                .collect(Collectors.toList());
+        return new RecommendedFilms(getFilmsByIds(ids), stored.getComputedAt());
     }
 
     @Override
     public List<Film> getCommonFilms(Integer userId, Integer friendId) {
-        log.debug("Запрос к БД на список общих фильмов у двух пользователей");
-        final String sqlQuery = "SELECT * " +
-                "FROM FILMS " +
-                "INNER JOIN MPA M on M.MPA_ID = FILMS.MPA_ID " +
-                "WHERE FILM_ID IN ( " +
-                "SELECT FILM_ID " +
-                "FROM FILMS_LIKES " +
-                "WHERE USER_ID = ?) " +
-                "AND FILM_ID IN ( " +
-                "SELECT FILM_ID " +
-                "FROM FILMS_LIKES " +
-                "WHERE USER_ID = ?)" +
-                "ORDER BY LIKES DESC, FILM_ID";
-        return jdbcTemplate.query(sqlQuery, FilmDbStorage::makeFilm, userId, friendId);
+        log.debug("Выдача списка общих фильмов у двух пользователей из индекса лайков");
+        return getFilmsByIds(sortByLikes(likeIndex.getCommonFilms(userId, friendId)));
+    }
+
+    private int[] getDirectorFilmIds(int directorId) {
+        return jdbcTemplate.queryForList("SELECT FILM_ID FROM FILMS_DIRECTORS WHERE DIRECTOR_ID = ?",
+                Integer.class, directorId).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    //Фильм стоит в порядке sortByLikes строго после позиции курсора
+    private boolean isAfter(int filmId, FilmCursor after) {
+        int likes = popularityIndex.getLikes(filmId);
+        return likes < after.getKey() || (likes == after.getKey() && filmId > after.getFilmId());
+    }
+
+    //Как и в запросах к БД: по убыванию лайков, при равенстве - по возрастанию id
+    private List<Integer> sortByLikes(int[] ids) {
+        return Arrays.stream(ids).boxed()
+                .sorted(Comparator.comparingInt((Integer filmId) -> popularityIndex.getLikes(filmId)).reversed()
+                        .thenComparingInt(filmId -> filmId))
+                .collect(Collectors.toList());
     }
 
     @Override
     public List<Film> getSearchedFilms(String query, String by) {
-        log.debug(String.format("Запрос к БД на поиск фильмов по %s", by));
-
-        switch (by) {
-            case "title":
-                final String sqlQueryTitle = "SELECT * " +
-                        "FROM FILMS " +
-                        "LEFT JOIN MPA on FILMS.MPA_ID = MPA.MPA_ID " +
-                        "WHERE LOWER(FILM_NAME) LIKE LOWER(?) " +
-                        "ORDER BY LIKES DESC";
-                return jdbcTemplate.query(sqlQueryTitle, FilmDbStorage::makeFilm, "%" + query + "%");
-            case "director":
-                final String sqlQueryDirector = "SELECT * " +
-                        "FROM FILMS " +
-                        "LEFT JOIN MPA on FILMS.MPA_ID = MPA.MPA_ID " +
-                        "JOIN FILMS_DIRECTORS FD on FD.FILM_ID = FILMS.FILM_ID " +
-                        "JOIN DIRECTORS ON FD.DIRECTOR_ID = DIRECTORS.DIRECTOR_ID " +
-                        "WHERE LOWER(DIRECTORS.DIRECTOR_NAME) LIKE LOWER(?) " +
-                        "ORDER BY LIKES DESC";
-                return jdbcTemplate.query(sqlQueryDirector, FilmDbStorage::makeFilm, "%" + query + "%");
-            default:
-                final String sqlQueryAll = "SELECT * " +
-                        "FROM FILMS " +
-                        "LEFT JOIN MPA on FILMS.MPA_ID = MPA.MPA_ID " +
-                        "LEFT JOIN FILMS_DIRECTORS FD on FD.FILM_ID = FILMS.FILM_ID " +
-                        "LEFT JOIN DIRECTORS ON FD.DIRECTOR_ID = DIRECTORS.DIRECTOR_ID " +
-                        "WHERE LOWER(FILM_NAME) LIKE LOWER(?) OR LOWER(DIRECTORS.DIRECTOR_NAME) LIKE LOWER(?) " +
-                        "ORDER BY LIKES DESC";
-                return jdbcTemplate.query(sqlQueryAll, FilmDbStorage::makeFilm, "%" + query + "%",
-                        "%" + query + "%");
-        }
+        return getSearchedFilms(query, by, FilmField.DEFAULT);
+    }
+
+    @Override
+    public List<Film> getSearchedFilms(String query, String by, Set<FilmField> fields) {
+        log.debug(String.format("Поиск фильмов по %s в поисковом индексе", by));
+        //Кандидаты ищутся по триграммам в памяти, из БД читаются только найденные фильмы
+        int[] ids = searchIndex.search(query, by.contains("title"), by.contains("director"));
+        return getFilmsByIds(sortByLikes(ids), fields);
+    }
+
+    @Override
+    public List<Suggestion> getSuggestions(String query, String by, Integer count) {
+        log.debug(String.format("Подсказки по %s из поискового индекса", by));
+        //Без обращения к БД: названия в индексе, лайки - из рейтинга популярности
+        return searchIndex.suggest(query, by.contains("title"), by.contains("director"), count,
+                popularityIndex::getLikes);
     }
 }
@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//Отложенная запись счетчика FILMS.LIKES.
+//Сами лайки (FILMS_LIKES) пишутся сразу, а изменение счетчика копится в памяти
+//и раз в filmorate.likes.flush-interval мс применяется одним batch-запросом на все фильмы.
+//Если приложение упадет до сброса - счетчики пересчитываются по FILMS_LIKES при старте (FilmDbStorage),
+//так что теряется не больше одного интервала, и то только до перезапуска
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class FilmLikesBuffer {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, LongAdder> deltas = new ConcurrentHashMap<>();
+
+    public void add(Integer filmId, int delta) {
+        deltas.computeIfAbsent(filmId, id -> new LongAdder()).add(delta);
+    }
+
+    public void discard(Integer filmId) {
+        deltas.remove(filmId);
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.likes.flush-interval:1000}")
+    public synchronized void flush() {
+        List<Object[]> batch = new ArrayList<>();
+        for (Map.Entry<Integer, LongAdder> entry : deltas.entrySet()) {
+            //sumThenReset не теряет лайки, пришедшие во время сброса - они останутся до следующего раза
+            long delta = entry.getValue().sumThenReset();
+            if (delta != 0) {
+                batch.add(new Object[]{delta, entry.getKey()});
+            }
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        log.debug(String.format("Запрос к БД на обновление LIKES для %d фильмов", batch.size()));
+        try {
+            jdbcTemplate.batchUpdate("UPDATE FILMS SET LIKES = LIKES + ? WHERE FILM_ID = ?", batch);
+        } catch (RuntimeException exp) {
+            //Возвращаем изменения обратно, чтобы применить их при следующем сбросе
+            log.error("Не удалось сбросить счетчики лайков в БД: {}", exp.getMessage());
+            for (Object[] row : batch) {
+                add((Integer) row[1], (int) (long) row[0]);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
@@ -4,15 +4,15 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Repository;
-import ru.yandex.practicum.filmorate.exception.CountOfResultNotExpectedException;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.index.FilmCache;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.index.ReferenceRegistry;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 
+import javax.annotation.PostConstruct;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -25,34 +25,33 @@ import java.util.stream.Collectors;
 public class GenreDbStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final PopularityIndex popularityIndex;
+    private final FilmCache filmCache;
+    private final ReferenceRegistry referenceRegistry;
+
+    //Жанры - неизменяемые данные из data.sql: читаем один раз при старте
+    @PostConstruct
+    public void loadRegistry() {
+        log.debug("Запрос к БД на загрузку справочника жанров");
+        referenceRegistry.loadGenres(jdbcTemplate.query("SELECT * FROM GENRE", GenreDbStorage::makeGenre));
+    }
 
     public Genre getGenre(Integer id) {
-        log.debug("Запрос к БД на выдачу жанра");
-
-        final String sqlQuery = "SELECT *" +
-                "FROM GENRE " +
-                "WHERE GENRE_ID = ? ";
-
-        List<Genre> genre = jdbcTemplate.query(sqlQuery, GenreDbStorage::makeGenre, id);
+        Genre genre = referenceRegistry.getGenre(id);
 
-        if (genre.isEmpty()) {
+        if (genre == null) {
             throw new EntityNotFoundException(String.format("Genre с id = %d не найден в базе", id));
         }
 
-        if (genre.size() != 1) {
-            throw new CountOfResultNotExpectedException("Количество полученных GENRE не совпадает с ожидаемым");
-        }
+        return genre;
+    }
 
-        return genre.get(0);
+    public boolean isExists(Integer id) {
+        return referenceRegistry.getGenre(id) != null;
     }
 
     public List<Genre> getAllGenre() {
-        log.debug("Запрос к БД на выдачу всех  жанров");
-
-        final String sqlQuery = "SELECT *" +
-                "FROM GENRE ";
-
-        List<Genre> genre = jdbcTemplate.query(sqlQuery, GenreDbStorage::makeGenre);
+        List<Genre> genre = referenceRegistry.getAllGenres();
 
         if (genre.isEmpty()) {
             throw new EntityNotFoundException("Genre не были найдены в базе");
@@ -70,6 +69,8 @@ public class GenreDbStorage {
 
         jdbcTemplate.update(sqlQuery, id);
         ArrayList<Genre> genres = new ArrayList<>(film.getGenres());
+        popularityIndex.setGenres(id, genres.stream().map(Genre::getId).collect(Collectors.toList()));
+        filmCache.invalidate(id);
 
         // Если жанров нет, то сохранять их не надо
         if (genres.isEmpty()) {
@@ -93,43 +94,8 @@ public class GenreDbStorage {
                     }
                 }
         );
-    }
-
-    public Film loadFilmGenre(Film film) {
-        log.debug("Запрос к БД на загрузку жанров");
-
-        final String sqlQuery = "SELECT *" +
-                "FROM FILMS_GENRE F " +
-                "INNER JOIN GENRE G on G.GENRE_ID = F.GENRE_ID " +
-                "WHERE FILM_ID = ? ";
-
-        final List<Genre> genres = jdbcTemplate.query(sqlQuery, GenreDbStorage::makeGenre, film.getId());
-        film.setGenres(new LinkedHashSet<>(genres));
-        return film;
-    }
-
-    public List<Film> loadFilmsGenre(List<Film> films) {
-        log.debug("Запрос к БД на загрузку жанров для нескольких фильмов");
-
-        List<Integer> ids = films.stream().map(Film::getId).collect(Collectors.toList());
-        Map<Integer, Film> filmMap = new LinkedHashMap<>();
-        for (Film f : films) {
-            filmMap.put(f.getId(), f);
-        }
-        SqlParameterSource parameters = new MapSqlParameterSource("ids", ids);
-        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
-
-        String sqlQuery = "SELECT *" +
-                "FROM FILMS_GENRE F " +
-                "INNER JOIN GENRE G on G.GENRE_ID = F.GENRE_ID " +
-                "WHERE FILM_ID IN (:ids)";
-
-        namedJdbcTemplate.query(sqlQuery, parameters, (rs, rowNum) ->
-                filmMap.get(rs.getInt("FILM_ID"))
-                        .getGenres()
-                        .add(makeGenre(rs, rowNum)));
-
-        return new ArrayList<>(filmMap.values());
+        //Между удалением и вставкой фильм мог попасть в кэш без жанров - сбрасываем еще раз
+        filmCache.invalidate(id);
     }
 
     private static Genre makeGenre(ResultSet rs, int rowNum) throws SQLException {
@@ -4,10 +4,11 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
-import ru.yandex.practicum.filmorate.exception.CountOfResultNotExpectedException;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.index.ReferenceRegistry;
 import ru.yandex.practicum.filmorate.model.Mpa;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
@@ -18,30 +19,27 @@ import java.util.List;
 public class MpaDbStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final ReferenceRegistry referenceRegistry;
 
-    public Mpa getMpa(Integer id) {
-        final String sqlQuery = "SELECT *" +
-                "FROM MPA " +
-                "WHERE MPA_ID = ? ";
+    //MPA - неизменяемые данные из data.sql: читаем один раз при старте
+    @PostConstruct
+    public void loadRegistry() {
+        log.debug("Запрос к БД на загрузку справочника MPA");
+        referenceRegistry.loadMpa(jdbcTemplate.query("SELECT * FROM MPA", MpaDbStorage::makeMpa));
+    }
 
-        List<Mpa> mpa = jdbcTemplate.query(sqlQuery, MpaDbStorage::makeMpa, id);
+    public Mpa getMpa(Integer id) {
+        Mpa mpa = referenceRegistry.getMpa(id);
 
-        if (mpa.isEmpty()) {
+        if (mpa == null) {
             throw new EntityNotFoundException(String.format("MPA с id = %d не найден в базе", id));
         }
 
-        if (mpa.size() != 1) {
-            throw new CountOfResultNotExpectedException("Количество полученных MPA не совпадает с ожидаемым");
-        }
-
-        return mpa.get(0);
+        return mpa;
     }
 
     public List<Mpa> getAllMpa() {
-        final String sqlQuery = "SELECT *" +
-                "FROM MPA ";
-
-        List<Mpa> mpa = jdbcTemplate.query(sqlQuery, MpaDbStorage::makeMpa);
+        List<Mpa> mpa = referenceRegistry.getAllMpa();
 
         if (mpa.isEmpty()) {
             log.error("MPA не были найдены в базе");
@@ -10,9 +10,11 @@ import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exception.CountOfResultNotExpectedException;
 import ru.yandex.practicum.filmorate.exception.DuplicateLikeException;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.index.PresenceIndex;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.storage.ReviewStorage;
 
+import javax.annotation.PostConstruct;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -25,6 +27,13 @@ import java.util.Objects;
 public class ReviewDbStorage implements ReviewStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final PresenceIndex presenceIndex;
+
+    @PostConstruct
+    public void loadPresenceIndex() {
+        log.debug("Запрос к БД на загрузку id отзывов в индекс наличия");
+        presenceIndex.getReviews().load(jdbcTemplate.queryForList("SELECT REVIEW_ID FROM REVIEWS", Integer.class));
+    }
 
     @Override
     public Review add(Review review) {
@@ -46,6 +55,7 @@ public class ReviewDbStorage implements ReviewStorage {
         Integer id = Objects.requireNonNull(keyHolder.getKey()).intValue();
 
         review.setReviewId(id);
+        presenceIndex.getReviews().add(id);
         return review;
     }
 
@@ -100,6 +110,7 @@ public class ReviewDbStorage implements ReviewStorage {
                 "WHERE REVIEW_ID = ? ";
 
         jdbcTemplate.update(sqlQuery, id);
+        presenceIndex.getReviews().remove(id);
 
         return user_Id;
     }
@@ -131,20 +142,17 @@ public class ReviewDbStorage implements ReviewStorage {
 
     @Override
     public void isReviewContains(Integer id) {
-        //Более простой запрос на выдачу отзыва для проверки наличия записи
-        final String sqlQuery = "SELECT REVIEW_ID " +
-                "FROM REVIEWS " +
-                "WHERE REVIEW_ID = ? ";
-
-        List<Review> review = jdbcTemplate.query(sqlQuery, ReviewDbStorage::makeSimpleReview, id);
-
-        if (review.size() == 0) {
+        //Проверка по индексу наличия, в БД - только для id, о которых индекс еще не знает
+        if (!presenceIndex.getReviews().contains(id, this::isExistsInDb)) {
             throw new EntityNotFoundException(String.format("Отзыв с id = %d не найден в базе", id));
         }
+    }
 
-        if (review.size() != 1) {
-            throw new CountOfResultNotExpectedException("Количество полученных отзывов не совпадает с ожидаемым");
-        }
+    private boolean isExistsInDb(int id) {
+        log.debug(String.format("Запрос к БД на наличие отзыва %d", id));
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM REVIEWS WHERE REVIEW_ID = ?",
+                Integer.class, id);
+        return count != null && count > 0;
     }
 
     @Override
@@ -279,12 +287,6 @@ public class ReviewDbStorage implements ReviewStorage {
         jdbcTemplate.update(usefulQuery, id);
     }
 
-    private static Review makeSimpleReview(ResultSet rs, int rowNum) throws SQLException {
-        return new Review(
-                rs.getInt("REVIEW_ID")
-        );
-    }
-
     private static Review makeReview(ResultSet rs, int rowNum) throws SQLException {
         return new Review(
                 rs.getInt("REVIEW_ID"),
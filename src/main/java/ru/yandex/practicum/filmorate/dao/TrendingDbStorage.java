@@ -0,0 +1,92 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.index.TrendingIndex;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.util.*;
+
+//Сохранение рейтинга трендов в БД и восстановление его при старте:
+//берем последнюю сохраненную копию, досчитываем лайки, поставленные после нее,
+//и вычитаем лайки из копии, которые удалили после сохранения (FILMS_LIKES_REMOVED)
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class TrendingDbStorage {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TrendingIndex trendingIndex;
+
+    @PostConstruct
+    public void loadTrendingIndex() {
+        log.debug("Запрос к БД на загрузку сохраненного рейтинга трендов");
+
+        Timestamp checkpoint = jdbcTemplate.queryForObject("SELECT MAX(CHECKPOINT_TIME) FROM FILMS_TRENDING",
+                Timestamp.class);
+
+        if (checkpoint != null) {
+            Map<TrendingPeriod, Map<Integer, Double>> scores = new EnumMap<>(TrendingPeriod.class);
+            jdbcTemplate.query("SELECT FILM_ID, PERIOD, SCORE FROM FILMS_TRENDING WHERE CHECKPOINT_TIME = ?", rs -> {
+                scores.computeIfAbsent(TrendingPeriod.valueOf(rs.getString("PERIOD")), p -> new HashMap<>())
+                        .put(rs.getInt("FILM_ID"), rs.getDouble("SCORE"));
+            }, checkpoint);
+            scores.forEach((period, values) -> trendingIndex.load(period, values, checkpoint.getTime()));
+        }
+
+        log.debug("Запрос к БД на лайки, поставленные после сохранения рейтинга трендов");
+        final String sqlQuery = "SELECT FILM_ID, LIKED_AT " +
+                "FROM FILMS_LIKES " +
+                "WHERE LIKED_AT > ?";
+
+        jdbcTemplate.query(sqlQuery, rs -> {
+            Timestamp likedAt = rs.getTimestamp("LIKED_AT");
+            if (likedAt != null) {
+                trendingIndex.addLike(rs.getInt("FILM_ID"), likedAt.getTime());
+            }
+        }, checkpoint != null ? checkpoint : new Timestamp(0));
+
+        if (checkpoint == null) {
+            return;
+        }
+        log.debug("Запрос к БД на лайки из сохраненного рейтинга трендов, удаленные после сохранения");
+        //Лайки, поставленные и удаленные после сохранения, в копию не попали - их не вычитаем
+        final String sqlRemoved = "SELECT FILM_ID, LIKED_AT " +
+                "FROM FILMS_LIKES_REMOVED " +
+                "WHERE REMOVED_AT > ? AND LIKED_AT <= ?";
+
+        jdbcTemplate.query(sqlRemoved, rs -> {
+            trendingIndex.removeLike(rs.getInt("FILM_ID"), rs.getTimestamp("LIKED_AT").getTime());
+        }, checkpoint, checkpoint);
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${filmorate.trending.checkpoint-interval:60000}",
+            initialDelayString = "${filmorate.trending.checkpoint-interval:60000}")
+    public void checkpoint() {
+        long now = System.currentTimeMillis();
+        trendingIndex.rescale(now);
+
+        List<Object[]> batch = new ArrayList<>();
+        Timestamp time = new Timestamp(now);
+        for (TrendingPeriod period : TrendingPeriod.values()) {
+            trendingIndex.getScores(period, now).forEach((filmId, score) ->
+                    batch.add(new Object[]{filmId, period.name(), score, time}));
+        }
+
+        log.debug(String.format("Запрос к БД на сохранение рейтинга трендов, записей: %d", batch.size()));
+        //Если фильм удалят прямо во время записи, транзакция откатится и останется предыдущая копия -
+        //следующая попытка будет через интервал
+        jdbcTemplate.update("DELETE FROM FILMS_TRENDING");
+        jdbcTemplate.batchUpdate("INSERT INTO FILMS_TRENDING(FILM_ID, PERIOD, SCORE, CHECKPOINT_TIME) " +
+                "VALUES (?, ?, ?, ?)", batch);
+        //Удаления до этого момента уже учтены в новой копии
+        jdbcTemplate.update("DELETE FROM FILMS_LIKES_REMOVED WHERE REMOVED_AT <= ?", time);
+    }
+}
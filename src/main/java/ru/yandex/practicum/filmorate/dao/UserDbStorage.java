@@ -2,21 +2,38 @@ package ru.yandex.practicum.filmorate.dao;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.CountOfResultNotExpectedException;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.index.AfterCommit;
+import ru.yandex.practicum.filmorate.index.FriendGraph;
+import ru.yandex.practicum.filmorate.index.LikeIndex;
+import ru.yandex.practicum.filmorate.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.index.PresenceIndex;
+import ru.yandex.practicum.filmorate.index.RecommendationStore;
+import ru.yandex.practicum.filmorate.index.TrendingIndex;
+import ru.yandex.practicum.filmorate.model.FriendPath;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.FriendWithMutual;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
-import java.util.Objects;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Slf4j
 @Repository
@@ -24,6 +41,46 @@ import java.util.Objects;
 public class UserDbStorage implements UserStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final PopularityIndex popularityIndex;
+    private final TrendingIndex trendingIndex;
+    private final LikeIndex likeIndex;
+    private final RecommendationStore recommendationStore;
+    private final PresenceIndex presenceIndex;
+    private final FriendGraph friendGraph;
+
+    //Выдача всех пользователей потоком: по сколько пользователей читается за раз
+    @Value("${filmorate.stream.chunk-size:200}")
+    private int chunkSize;
+
+    //Ограничения обхода графа при подборе возможных знакомых
+    @Value("${filmorate.friends.suggestions-max-friends:500}")
+    private int suggestionsMaxFriends;
+    @Value("${filmorate.friends.suggestions-max-per-friend:500}")
+    private int suggestionsMaxPerFriend;
+    @Value("${filmorate.friends.suggestions-time-budget:50}")
+    private long suggestionsTimeBudget;
+    //Ограничения поиска цепочки дружбы: наибольшая глубина (запрос может только уменьшить) и время
+    @Value("${filmorate.friends.path-max-depth:6}")
+    private int pathMaxDepth;
+    @Value("${filmorate.friends.path-time-budget:100}")
+    private long pathTimeBudget;
+
+    @PostConstruct
+    public void loadPresenceIndex() {
+        log.debug("Запрос к БД на загрузку id пользователей в индекс наличия");
+        presenceIndex.getUsers().load(jdbcTemplate.queryForList("SELECT USER_ID FROM USERS", Integer.class));
+    }
+
+    @PostConstruct
+    public void loadFriendGraph() {
+        log.debug("Запрос к БД на загрузку графа дружбы");
+        FriendGraph.Edges edges = new FriendGraph.Edges();
+        jdbcTemplate.query("SELECT USER_ID, FRIEND_ID FROM FRIENDS", rs -> {
+            edges.add(rs.getInt("USER_ID"), rs.getInt("FRIEND_ID"));
+        });
+        friendGraph.load(edges);
+    }
 
     @Override
     public User add(User user) {
@@ -45,47 +102,75 @@ public class UserDbStorage implements UserStorage {
         );
 
         user.setId(Objects.requireNonNull(keyHolder.getKey()).intValue());
+        presenceIndex.getUsers().add(user.getId());
         return user;
     }
 
+    //Удаление одной транзакцией. Оценки отзывов, лайки, дружбы и отзывы пользователя удаляются каскадно,
+    //а счетчики USEFUL и LIKES поправляются сгруппированными дельтами: они считаются одним чтением
+    //REVIEWS_MARK и FILMS_LIKES и применяются batch-запросами по первичному ключу.
+    //Индексы в памяти меняются только после всех запросов к БД - если запрос упадет, транзакция откатится,
+    //а индексы останутся согласованными с БД
     @Override
+    @Transactional
     public void remove(Integer id) {
-        //Прежде чем удалить юзера, необходимо удалить его лайки и дизлайки на отзывы/фильмы
-        //Записи в таблицах удалятся самостоятельно
-        //Но необходим перерасчет значений полей likes/useful в фильмы/отзывы
-
-        log.debug("Запрос к БД на обновление USEFUL для отзывов, которые лайкнул удаляемый пользователь");
-        final String sqlLikeQuery = "UPDATE REVIEWS SET USEFUL = REVIEWS.USEFUL - 1 " +
-                "WHERE REVIEW_ID IN " +
-                "(SELECT REVIEW_ID " +
-                "FROM REVIEWS_MARK " +
-                "WHERE USER_ID = ? AND MARK = ?)";
-
-        jdbcTemplate.update(sqlLikeQuery, id, 1);
-
-        log.debug("Запрос к БД на обновление USEFUL для отзывов, которые дизлайкнул удаляемый пользователь");
-        final String sqlDislikeQuery = "UPDATE REVIEWS SET USEFUL = REVIEWS.USEFUL + 1 " +
-                "WHERE REVIEW_ID IN " +
-                "(SELECT REVIEW_ID " +
-                "FROM REVIEWS_MARK " +
-                "WHERE USER_ID = ? AND MARK = ?)";
-
-        jdbcTemplate.update(sqlDislikeQuery, id, -1);
-
-        log.debug("Запрос к БД на обновление LIKES для фильмов, которые лайкнул удаляемый пользователь");
-        final String sqlFilmLikeQuery = "UPDATE FILMS SET LIKES = LIKES - 1 " +
-                "WHERE FILM_ID IN " +
-                "(SELECT FILM_ID " +
-                "FROM FILMS_LIKES " +
-                "WHERE USER_ID = ?)";
-
-        jdbcTemplate.update(sqlFilmLikeQuery, id);
+        log.debug("Запрос к БД на оценки отзывов, сделанные удаляемым пользователем");
+        //Снятая оценка меняет полезность отзыва на обратную величину
+        List<Object[]> usefulDeltas = jdbcTemplate.query("SELECT REVIEW_ID, -SUM(MARK) AS DELTA " +
+                        "FROM REVIEWS_MARK " +
+                        "WHERE USER_ID = ? " +
+                        "GROUP BY REVIEW_ID",
+                (rs, rowNum) -> new Object[]{rs.getInt("DELTA"), rs.getInt("REVIEW_ID")}, id);
+
+        log.debug("Запрос к БД на лайки фильмов, поставленные удаляемым пользователем");
+        Map<Integer, Timestamp> likedFilms = new HashMap<>();
+        jdbcTemplate.query("SELECT FILM_ID, LIKED_AT FROM FILMS_LIKES WHERE USER_ID = ?", rs -> {
+            likedFilms.put(rs.getInt("FILM_ID"), rs.getTimestamp("LIKED_AT"));
+        }, id);
+
+        //Отзывы пользователя удалятся каскадно - их нужно убрать и из индекса наличия
+        List<Integer> reviews = jdbcTemplate.queryForList("SELECT REVIEW_ID FROM REVIEWS WHERE USER_ID = ?",
+                Integer.class, id);
+
+        if (!usefulDeltas.isEmpty()) {
+            log.debug(String.format("Запрос к БД на обновление USEFUL для %d отзывов", usefulDeltas.size()));
+            jdbcTemplate.batchUpdate("UPDATE REVIEWS SET USEFUL = USEFUL + ? WHERE REVIEW_ID = ?", usefulDeltas);
+        }
+        if (!likedFilms.isEmpty()) {
+            log.debug(String.format("Запрос к БД на обновление LIKES для %d фильмов", likedFilms.size()));
+            List<Object[]> likeDeltas = new ArrayList<>(likedFilms.size());
+            likedFilms.keySet().forEach(filmId -> likeDeltas.add(new Object[]{filmId}));
+            jdbcTemplate.batchUpdate("UPDATE FILMS SET LIKES = LIKES - 1 WHERE FILM_ID = ?", likeDeltas);
+
+            //Удаленные лайки вычитаются из сохраненной копии рейтинга трендов при восстановлении
+            Timestamp removedAt = new Timestamp(System.currentTimeMillis());
+            List<Object[]> removedLikes = new ArrayList<>(likedFilms.size());
+            likedFilms.forEach((filmId, likedAt) -> {
+                if (likedAt != null) {
+                    removedLikes.add(new Object[]{filmId, likedAt, removedAt});
+                }
+            });
+            jdbcTemplate.batchUpdate("INSERT INTO FILMS_LIKES_REMOVED(FILM_ID, LIKED_AT, REMOVED_AT) " +
+                    "VALUES (?, ?, ?)", removedLikes);
+        }
 
         log.debug("Запрос к БД на удаление пользователя");
-        final String sqlQuery = "DELETE FROM USERS " +
-                "WHERE USER_ID = ?";
-
-        jdbcTemplate.update(sqlQuery, id);
+        jdbcTemplate.update("DELETE FROM USERS WHERE USER_ID = ?", id);
+
+        AfterCommit.run(() -> {
+            likeIndex.removeUser(id);
+            recommendationStore.remove(id);
+            likedFilms.forEach((filmId, likedAt) -> {
+                popularityIndex.changeLikes(filmId, -1);
+                if (likedAt != null) {
+                    trendingIndex.removeLike(filmId, likedAt.getTime());
+                }
+            });
+            presenceIndex.getUsers().remove(id);
+            //Дружбы удалились каскадно
+            friendGraph.removeUser(id);
+            reviews.forEach(presenceIndex.getReviews()::remove);
+        });
     }
 
     @Override
@@ -136,14 +221,45 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query(sqlQuery, UserDbStorage::makeUser);
     }
 
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        log.debug("Потоковый запрос к БД на всех юзеров");
+        //Страницами по chunkSize: соединение возвращается в пул до того, как пачка пишется клиенту
+        List<User> chunk = getUserPage(chunkSize, null);
+        while (!chunk.isEmpty()) {
+            chunk.forEach(consumer);
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+            chunk = getUserPage(chunkSize, chunk.get(chunk.size() - 1).getId());
+        }
+    }
+
+    @Override
+    public List<User> getUserPage(Integer size, Integer afterId) {
+        log.debug("Запрос к БД на страницу юзеров");
+        final String sqlQuery = "SELECT * " +
+                "FROM USERS " +
+                "WHERE USER_ID > ? " +
+                "ORDER BY USER_ID " +
+                "LIMIT ?";
+
+        return jdbcTemplate.query(sqlQuery, UserDbStorage::makeUser, afterId == null ? 0 : afterId, size);
+    }
+
     @Override
     public void addFriend(Integer id, Integer idFriend) {
+        //Ключа в FRIENDS нет - повторную дружбу не записываем, проверка по графу
+        if (friendGraph.contains(id, idFriend)) {
+            return;
+        }
         log.debug("Запрос к БД на добавление в друзья");
 
         final String sqlQuery = "INSERT INTO FRIENDS(USER_ID, FRIEND_ID) "
                 + "VALUES(?, ?)";
 
         jdbcTemplate.update(sqlQuery, id, idFriend);
+        friendGraph.add(id, idFriend);
     }
 
     @Override
@@ -154,30 +270,97 @@ public class UserDbStorage implements UserStorage {
                 "WHERE USER_ID = ? AND FRIEND_ID = ?";
 
         jdbcTemplate.update(sqlQuery, id, idFriend);
+        friendGraph.remove(id, idFriend);
     }
 
+    //Id друзей берутся из графа в памяти, из БД - только сами пользователи одним запросом
     @Override
     public List<User> getFriends(Integer id) {
-        log.debug("Запрос к БД на выдачу друзей");
+        return getUsersByIds(friendGraph.getFriends(id));
+    }
+
+    @Override
+    public List<User> getCommonFriend(Integer id, Integer idOther) {
+        return getUsersByIds(friendGraph.getCommonFriends(id, idOther));
+    }
 
-        final String sqlQuery = "SELECT* FROM USERS U " +
-                "INNER JOIN FRIENDS F on U.USER_ID = F.FRIEND_ID " +
-                "WHERE F.USER_ID = ?";
+    //Друзья вместе с числом общих друзей с viewerId: пользователи - одним запросом, числа - по графу в памяти
+    @Override
+    public List<FriendWithMutual> getFriendsWithMutual(Integer id, Integer viewerId) {
+        int[] ids = friendGraph.getFriends(id);
+        int[] counts = friendGraph.countCommonFriends(viewerId, ids);
+        Map<Integer, Integer> mutual = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            mutual.put(ids[i], counts[i]);
+        }
 
-        return jdbcTemplate.query(sqlQuery, UserDbStorage::makeUser, id);
+        List<FriendWithMutual> friends = new ArrayList<>(ids.length);
+        for (User user : getUsersByIds(ids)) {
+            friends.add(new FriendWithMutual(user, mutual.get(user.getId())));
+        }
+        return friends;
     }
 
     @Override
-    public List<User> getCommonFriend(Integer id, Integer idOther) {
-        log.debug("Запрос к БД на выдачу общих друзей");
+    public List<FriendSuggestion> getFriendSuggestions(Integer id, Integer count) {
+        List<FriendGraph.Suggestion> suggestions = friendGraph.getSuggestions(id, count,
+                suggestionsMaxFriends, suggestionsMaxPerFriend,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(suggestionsTimeBudget));
+
+        Map<Integer, User> users = new HashMap<>();
+        for (User user : getUsersByIds(suggestions.stream().mapToInt(FriendGraph.Suggestion::getUserId).toArray())) {
+            users.put(user.getId(), user);
+        }
+        List<FriendSuggestion> result = new ArrayList<>(suggestions.size());
+        for (FriendGraph.Suggestion suggestion : suggestions) {
+            User user = users.get(suggestion.getUserId());
+            if (user != null) {
+                result.add(new FriendSuggestion(user, suggestion.getMutualFriends()));
+            }
+        }
+        return result;
+    }
 
-        final String sqlQuery = "SELECT* FROM USERS U " +
-                "INNER JOIN FRIENDS F1 on U.USER_ID = F1.FRIEND_ID " +
-                "INNER JOIN FRIENDS F2 on U.USER_ID = F2.FRIEND_ID " +
-                "WHERE F1.USER_ID = ?" +
-                "AND F2.USER_ID = ?";
+    @Override
+    public FriendPath getFriendPath(Integer id, Integer otherId, Integer maxDepth) {
+        FriendGraph.Path path = friendGraph.getPath(id, otherId, Math.min(maxDepth, pathMaxDepth),
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pathTimeBudget));
+        int[] ids = path.getUserIds();
+        if (ids.length == 0) {
+            return new FriendPath(new ArrayList<>(), null, path.isInterrupted());
+        }
 
-        return jdbcTemplate.query(sqlQuery, UserDbStorage::makeUser, id, idOther);
+        Map<Integer, User> users = new HashMap<>();
+        for (User user : getUsersByIds(ids)) {
+            users.put(user.getId(), user);
+        }
+        List<User> chain = new ArrayList<>(ids.length);
+        for (int userId : ids) {
+            //Пользователь из цепочки удален, пока она загружалась - цепочки больше нет
+            if (!users.containsKey(userId)) {
+                return new FriendPath(new ArrayList<>(), null, false);
+            }
+            chain.add(users.get(userId));
+        }
+        return new FriendPath(chain, ids.length - 1, false);
+    }
+
+    //Пользователи по возрастанию id
+    private List<User> getUsersByIds(int[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        log.debug(String.format("Запрос к БД на выдачу %d пользователей по id", ids.length));
+        final String sqlQuery = "SELECT * " +
+                "FROM USERS " +
+                "WHERE USER_ID IN (:ids) " +
+                "ORDER BY USER_ID";
+
+        List<Integer> params = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            params.add(id);
+        }
+        return namedJdbcTemplate.query(sqlQuery, new MapSqlParameterSource("ids", params), UserDbStorage::makeUser);
     }
 
     private static User makeUser(ResultSet rs, int rowNum) throws SQLException {
@@ -192,7 +375,29 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public void isContains(Integer id) {
-        // Если такого юзера нет, вылетит ошибка об отсутствии в базе
-        this.get(id);
+        //Проверка по индексу наличия, в БД - только для id, о которых индекс еще не знает
+        if (!presenceIndex.getUsers().contains(id, this::isExistsInDb)) {
+            throw new EntityNotFoundException(String.format("Пользователь с id = %d не найден в базе", id));
+        }
+    }
+
+    private boolean isExistsInDb(int id) {
+        log.debug(String.format("Запрос к БД на наличие пользователя %d", id));
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM USERS WHERE USER_ID = ?",
+                Integer.class, id);
+        return count != null && count > 0;
+    }
+
+    @Override
+    public Set<Integer> getExistingIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        final String sqlQuery = "SELECT USER_ID " +
+                "FROM USERS " +
+                "WHERE USER_ID IN (:ids)";
+
+        return new HashSet<>(namedJdbcTemplate.queryForList(sqlQuery, new MapSqlParameterSource("ids", ids),
+                Integer.class));
     }
 }
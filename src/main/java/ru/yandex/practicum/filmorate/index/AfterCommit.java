@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+//Изменение индексов и версий в памяти после фиксации транзакции: при откате они остаются согласованными с БД.
+//Вне транзакции действие выполняется сразу - запросы к этому моменту уже зафиксированы
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
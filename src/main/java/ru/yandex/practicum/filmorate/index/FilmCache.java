@@ -0,0 +1,199 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+//Кэш фильмов целиком (с MPA, жанрами и режиссёрами) перед FilmAggregateLoader.
+//Вытеснение - сегментированный LRU: новый фильм попадает в "испытательный" сегмент,
+//а повторное обращение переносит его в "защищенный" (80% объема). Так разовые просмотры
+//длинных списков не вытесняют фильмы, которые запрашивают постоянно.
+//Объем считается в приблизительных байтах фильма, а не в штуках.
+//Наружу отдаются только копии - изменения отданного фильма кэш не портят.
+//Лайки в кэше не хранятся: они меняются часто, и в копию подставляется текущее значение из рейтинга популярности
+@Component
+public class FilmCache {
+
+    private final PopularityIndex popularityIndex;
+    private final long maxWeight;
+    private final long protectedMaxWeight;
+    //LinkedHashMap в режиме access-order: первый элемент - давно не использованный
+    private final LinkedHashMap<Integer, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Integer, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationWeight;
+    private long protectedWeight;
+    //Режиссёр -> закэшированные фильмы, чтобы при переименовании сбросить только их
+    private final Map<Integer, Set<Integer>> directorFilms = new HashMap<>();
+    //Растет при каждом сбросе: фильм, загруженный до сброса, в кэш уже не кладем
+    private long modifications;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public FilmCache(PopularityIndex popularityIndex,
+                     @Value("${filmorate.films.cache-max-bytes:16777216}") long maxWeight) {
+        this.popularityIndex = popularityIndex;
+        this.maxWeight = maxWeight;
+        this.protectedMaxWeight = maxWeight * 4 / 5;
+    }
+
+    public synchronized Optional<Film> get(int id) {
+        Entry entry = touch(id);
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(copy(entry.film));
+    }
+
+    //Найденные в кэше фильмы по id, отсутствующих в ответе нет
+    public synchronized Map<Integer, Film> getAll(Collection<Integer> ids) {
+        Map<Integer, Film> found = new HashMap<>();
+        for (Integer id : ids) {
+            Entry entry = touch(id);
+            if (entry == null) {
+                misses.increment();
+            } else {
+                hits.increment();
+                found.put(id, copy(entry.film));
+            }
+        }
+        return found;
+    }
+
+    //Снимок счетчика сбросов - берется до чтения из БД и передается в put
+    public synchronized long getModifications() {
+        return modifications;
+    }
+
+    public synchronized void put(Film film, long modificationsBeforeLoad) {
+        if (modificationsBeforeLoad != modifications) {
+            return;
+        }
+        remove(film.getId());
+        Entry entry = new Entry(copy(film));
+        probation.put(film.getId(), entry);
+        probationWeight += entry.weight;
+        for (Director director : film.getDirectors()) {
+            directorFilms.computeIfAbsent(director.getId(), id -> new HashSet<>()).add(film.getId());
+        }
+        evict();
+    }
+
+    public synchronized void invalidate(int id) {
+        modifications++;
+        remove(id);
+    }
+
+    public synchronized void invalidateDirector(int directorId) {
+        modifications++;
+        Set<Integer> films = directorFilms.get(directorId);
+        if (films != null) {
+            new ArrayList<>(films).forEach(this::remove);
+        }
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(),
+                probation.size() + protectedSegment.size(), probationWeight + protectedWeight);
+    }
+
+    //Обращение к фильму: из испытательного сегмента он переходит в защищенный
+    private Entry touch(int id) {
+        Entry entry = protectedSegment.get(id);
+        if (entry != null) {
+            return entry;
+        }
+        entry = probation.remove(id);
+        if (entry == null) {
+            return null;
+        }
+        probationWeight -= entry.weight;
+        protectedSegment.put(id, entry);
+        protectedWeight += entry.weight;
+        //Лишнее из защищенного сегмента возвращается в испытательный, а не удаляется сразу
+        Iterator<Map.Entry<Integer, Entry>> eldest = protectedSegment.entrySet().iterator();
+        while (protectedWeight > protectedMaxWeight && eldest.hasNext()) {
+            Map.Entry<Integer, Entry> demoted = eldest.next();
+            eldest.remove();
+            protectedWeight -= demoted.getValue().weight;
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationWeight += demoted.getValue().weight;
+        }
+        return entry;
+    }
+
+    private void evict() {
+        while (probationWeight + protectedWeight > maxWeight) {
+            LinkedHashMap<Integer, Entry> segment = probation.isEmpty() ? protectedSegment : probation;
+            Integer id = segment.keySet().iterator().next();
+            remove(id);
+            evictions.increment();
+        }
+    }
+
+    private void remove(int id) {
+        Entry entry = probation.remove(id);
+        if (entry != null) {
+            probationWeight -= entry.weight;
+        } else {
+            entry = protectedSegment.remove(id);
+            if (entry == null) {
+                return;
+            }
+            protectedWeight -= entry.weight;
+        }
+        for (Director director : entry.film.getDirectors()) {
+            Set<Integer> films = directorFilms.get(director.getId());
+            if (films != null && films.remove(id) && films.isEmpty()) {
+                directorFilms.remove(director.getId());
+            }
+        }
+    }
+
+    private Film copy(Film film) {
+        Film copy = new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), new Mpa(film.getMpa().getId(), film.getMpa().getName()),
+                film.getGenres().stream()
+                        .map(genre -> new Genre(genre.getId(), genre.getName()))
+                        .collect(Collectors.toCollection(LinkedHashSet::new)),
+                film.getDirectors().stream()
+                        .map(director -> new Director(director.getId(), director.getName()))
+                        .collect(Collectors.toCollection(LinkedHashSet::new)));
+        copy.setLikes(popularityIndex.getLikes(film.getId()));
+        return copy;
+    }
+
+    private static class Entry {
+
+        private final Film film;
+        private final long weight;
+
+        private Entry(Film film) {
+            this.film = film;
+            this.weight = weigh(film);
+        }
+
+        //Примерный размер в байтах: строки по 2 байта на символ плюс накладные расходы объектов
+        private static long weigh(Film film) {
+            long weight = 128 + 2L * (film.getName().length() + film.getDescription().length());
+            for (Genre genre : film.getGenres()) {
+                weight += 48 + 2L * genre.getName().length();
+            }
+            for (Director director : film.getDirectors()) {
+                weight += 48 + 2L * director.getName().length();
+            }
+            return weight;
+        }
+    }
+}
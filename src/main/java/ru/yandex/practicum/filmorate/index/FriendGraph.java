@@ -0,0 +1,373 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//Граф дружбы в памяти: для каждого пользователя - отсортированный массив id его друзей
+//и отдельно - массив id тех, кто добавил его в друзья (нужен, чтобы при удалении пользователя
+//убрать его из чужих списков, не просматривая весь граф).
+//Строки неизменяемые: запись копирует одну строку и подменяет ее (copy-on-write), поэтому
+//чтение идет без блокировок, а записи синхронизированы. Массив строк копируется только при росте.
+//Общие друзья - слияние двух отсортированных строк
+@Slf4j
+@Component
+public class FriendGraph {
+
+    private static final int[] EMPTY = new int[0];
+
+    //Строка с индексом id - друзья пользователя id; null - друзей нет
+    private volatile AtomicReferenceArray<int[]> friends = new AtomicReferenceArray<>(1);
+    private volatile AtomicReferenceArray<int[]> followers = new AtomicReferenceArray<>(1);
+
+    //Загрузка всего графа: строки собираются подсчетом (как в CSR) - сначала размеры, потом заполнение
+    public synchronized void load(Edges edges) {
+        int maxId = 0;
+        for (int i = 0; i < edges.size; i++) {
+            maxId = Math.max(maxId, Math.max(edges.users[i], edges.friends[i]));
+        }
+        friends = build(edges.users, edges.friends, edges.size, maxId);
+        followers = build(edges.friends, edges.users, edges.size, maxId);
+        log.debug(String.format("Граф дружбы загружен, связей: %d", edges.size));
+    }
+
+    //false - связь уже была
+    public synchronized boolean add(int userId, int friendId) {
+        int[] row = row(friends, userId);
+        if (Arrays.binarySearch(row, friendId) >= 0) {
+            return false;
+        }
+        friends = set(friends, userId, insert(row, friendId));
+        followers = set(followers, friendId, insert(row(followers, friendId), userId));
+        return true;
+    }
+
+    public synchronized void remove(int userId, int friendId) {
+        friends = set(friends, userId, delete(row(friends, userId), friendId));
+        followers = set(followers, friendId, delete(row(followers, friendId), userId));
+    }
+
+    //Удаляет пользователя вместе со всеми связями, в которых он участвует
+    public synchronized void removeUser(int userId) {
+        for (int friendId : row(friends, userId)) {
+            followers = set(followers, friendId, delete(row(followers, friendId), userId));
+        }
+        for (int followerId : row(followers, userId)) {
+            friends = set(friends, followerId, delete(row(friends, followerId), userId));
+        }
+        friends = set(friends, userId, EMPTY);
+        followers = set(followers, userId, EMPTY);
+    }
+
+    public boolean contains(int userId, int friendId) {
+        return Arrays.binarySearch(row(friends, userId), friendId) >= 0;
+    }
+
+    //Друзья по возрастанию id. Массив общий с графом - изменять его нельзя
+    public int[] getFriends(int userId) {
+        return row(friends, userId);
+    }
+
+    //Общие друзья по возрастанию id: одним проходом по двум отсортированным строкам
+    public int[] getCommonFriends(int userId, int otherId) {
+        AtomicReferenceArray<int[]> current = friends;
+        int[] first = row(current, userId);
+        int[] second = row(current, otherId);
+        int[] common = new int[Math.min(first.length, second.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                common[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, size);
+    }
+
+    //Для каждого из userIds - сколько у него общих друзей с viewerId (пересечение отсортированных строк без копий)
+    public int[] countCommonFriends(int viewerId, int[] userIds) {
+        AtomicReferenceArray<int[]> current = friends;
+        int[] viewer = row(current, viewerId);
+        int[] counts = new int[userIds.length];
+        for (int k = 0; k < userIds.length; k++) {
+            int[] other = row(current, userIds[k]);
+            int i = 0;
+            int j = 0;
+            while (i < viewer.length && j < other.length) {
+                if (viewer[i] < other[j]) {
+                    i++;
+                } else if (viewer[i] > other[j]) {
+                    j++;
+                } else {
+                    counts[k]++;
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    //Друзья друзей, которых еще нет в друзьях, по убыванию числа общих друзей (при равенстве - по id).
+    //Обход ограничен: берется не больше maxFriends своих друзей и не больше maxPerFriend друзей у каждого,
+    //а после deadline (System.nanoTime) обход останавливается и ранжируется то, что успели собрать
+    public List<Suggestion> getSuggestions(int userId, int count, int maxFriends, int maxPerFriend, long deadline) {
+        AtomicReferenceArray<int[]> current = friends;
+        int[] own = row(current, userId);
+        int visited = Math.min(own.length, maxFriends);
+
+        //Кандидаты собираются в один массив с повторами: после сортировки число повторов
+        //кандидата - это число общих друзей, и словарь счетчиков не нужен
+        int[] candidates = new int[16];
+        int size = 0;
+        for (int i = 0; i < visited && System.nanoTime() < deadline; i++) {
+            int[] second = row(current, own[i]);
+            int limit = Math.min(second.length, maxPerFriend);
+            if (size + limit > candidates.length) {
+                candidates = Arrays.copyOf(candidates, Math.max(candidates.length * 2, size + limit));
+            }
+            for (int j = 0; j < limit; j++) {
+                int candidate = second[j];
+                if (candidate != userId && Arrays.binarySearch(own, candidate) < 0) {
+                    candidates[size++] = candidate;
+                }
+            }
+        }
+        Arrays.sort(candidates, 0, size);
+
+        //Число общих друзей в старших битах, инвертированный id - в младших:
+        //сортировка по возрастанию дает порядок от лучшего кандидата
+        long[] ranked = new long[size];
+        int distinct = 0;
+        for (int i = 0; i < size; ) {
+            int j = i;
+            while (j < size && candidates[j] == candidates[i]) {
+                j++;
+            }
+            ranked[distinct++] = -(((long) (j - i) << 32) | (Integer.MAX_VALUE - candidates[i]));
+            i = j;
+        }
+        Arrays.sort(ranked, 0, distinct);
+
+        List<Suggestion> suggestions = new ArrayList<>(Math.min(count, distinct));
+        for (int i = 0; i < distinct && i < count; i++) {
+            long packed = -ranked[i];
+            suggestions.add(new Suggestion(Integer.MAX_VALUE - (int) packed, (int) (packed >>> 32)));
+        }
+        return suggestions;
+    }
+
+    //Кратчайшая цепочка дружбы от userId до otherId (по связям "пользователь -> друг") не длиннее maxDepth связей.
+    //Двунаправленный поиск в ширину: вперед по друзьям от userId, назад по подписчикам от otherId,
+    //на каждом шаге расширяется меньший фронт. После deadline (System.nanoTime) поиск прерывается
+    public Path getPath(int userId, int otherId, int maxDepth, long deadline) {
+        if (userId == otherId) {
+            return new Path(new int[]{userId}, false);
+        }
+        Search forward = new Search(friends, userId);
+        Search backward = new Search(followers, otherId);
+        for (int depth = 0; depth < maxDepth && forward.size > 0 && backward.size > 0; depth++) {
+            int meet = forward.size <= backward.size
+                    ? expand(forward, backward, deadline)
+                    : expand(backward, forward, deadline);
+            if (meet < 0) {
+                return new Path(EMPTY, true);
+            }
+            if (meet > 0) {
+                return new Path(join(forward, backward, meet), false);
+            }
+        }
+        return new Path(EMPTY, false);
+    }
+
+    //Расширяет фронт поиска на один уровень.
+    //Возвращает узел встречи со встречным поиском, 0 - встречи нет, -1 - время вышло
+    private static int expand(Search search, Search other, long deadline) {
+        int[] next = new int[16];
+        int nextSize = 0;
+        for (int i = 0; i < search.size; i++) {
+            if (System.nanoTime() >= deadline) {
+                return -1;
+            }
+            int node = search.frontier[i];
+            for (int neighbour : row(search.rows, node)) {
+                if (search.parents.containsKey(neighbour)) {
+                    continue;
+                }
+                search.parents.put(neighbour, node);
+                if (other.parents.containsKey(neighbour)) {
+                    return neighbour;
+                }
+                if (nextSize == next.length) {
+                    next = Arrays.copyOf(next, nextSize * 2);
+                }
+                next[nextSize++] = neighbour;
+            }
+        }
+        search.frontier = next;
+        search.size = nextSize;
+        return 0;
+    }
+
+    //Цепочка от начала прямого поиска через узел встречи до начала встречного
+    private static int[] join(Search forward, Search backward, int meet) {
+        int[] path = new int[16];
+        int size = 0;
+        for (int node = meet; node != 0; node = forward.parents.get(node, 0)) {
+            if (size == path.length) {
+                path = Arrays.copyOf(path, size * 2);
+            }
+            path[size++] = node;
+        }
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int swap = path[i];
+            path[i] = path[j];
+            path[j] = swap;
+        }
+        for (int node = backward.parents.get(meet, 0); node != 0; node = backward.parents.get(node, 0)) {
+            if (size == path.length) {
+                path = Arrays.copyOf(path, size * 2);
+            }
+            path[size++] = node;
+        }
+        return Arrays.copyOf(path, size);
+    }
+
+    private static int[] row(AtomicReferenceArray<int[]> rows, int id) {
+        int[] row = id >= 0 && id < rows.length() ? rows.get(id) : null;
+        return row == null ? EMPTY : row;
+    }
+
+    //Подменяет строку; если id за пределами массива - возвращает увеличенную копию
+    private static AtomicReferenceArray<int[]> set(AtomicReferenceArray<int[]> rows, int id, int[] row) {
+        if (id >= rows.length()) {
+            AtomicReferenceArray<int[]> grown = new AtomicReferenceArray<>(Math.max(rows.length() * 2, id + 1));
+            for (int i = 0; i < rows.length(); i++) {
+                grown.set(i, rows.get(i));
+            }
+            rows = grown;
+        }
+        rows.set(id, row);
+        return rows;
+    }
+
+    private static int[] insert(int[] row, int value) {
+        int position = -Arrays.binarySearch(row, value) - 1;
+        int[] copy = new int[row.length + 1];
+        System.arraycopy(row, 0, copy, 0, position);
+        copy[position] = value;
+        System.arraycopy(row, position, copy, position + 1, row.length - position);
+        return copy;
+    }
+
+    private static int[] delete(int[] row, int value) {
+        int position = Arrays.binarySearch(row, value);
+        if (position < 0) {
+            return row;
+        }
+        int[] copy = new int[row.length - 1];
+        System.arraycopy(row, 0, copy, 0, position);
+        System.arraycopy(row, position + 1, copy, position, row.length - position - 1);
+        return copy;
+    }
+
+    private static AtomicReferenceArray<int[]> build(int[] from, int[] to, int size, int maxId) {
+        int[] counts = new int[maxId + 1];
+        for (int i = 0; i < size; i++) {
+            counts[from[i]]++;
+        }
+        int[][] rows = new int[maxId + 1][];
+        for (int id = 0; id <= maxId; id++) {
+            if (counts[id] > 0) {
+                rows[id] = new int[counts[id]];
+                counts[id] = 0;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            rows[from[i]][counts[from[i]]++] = to[i];
+        }
+        //В таблице FRIENDS нет ключа - одинаковые строки схлопываем
+        for (int id = 0; id <= maxId; id++) {
+            if (rows[id] != null) {
+                Arrays.sort(rows[id]);
+                rows[id] = distinct(rows[id]);
+            }
+        }
+        return new AtomicReferenceArray<>(rows);
+    }
+
+    private static int[] distinct(int[] sorted) {
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+
+    //Кандидат в друзья: id и число общих друзей
+    @Getter
+    @AllArgsConstructor
+    public static class Suggestion {
+
+        private final int userId;
+        private final int mutualFriends;
+    }
+
+    //Цепочка id от первого пользователя до второго; пустая - цепочки нет или поиск прерван по времени
+    @Getter
+    @AllArgsConstructor
+    public static class Path {
+
+        private final int[] userIds;
+        private final boolean interrupted;
+    }
+
+    //Состояние одного направления поиска: посещенные узлы с родителями (у начального узла родитель 0) и фронт
+    private static class Search {
+
+        private final AtomicReferenceArray<int[]> rows;
+        private final IntIntMap parents = new IntIntMap(64);
+        private int[] frontier;
+        private int size;
+
+        private Search(AtomicReferenceArray<int[]> rows, int start) {
+            this.rows = rows;
+            parents.put(start, 0);
+            frontier = new int[]{start};
+            size = 1;
+        }
+    }
+
+    //Связи для загрузки графа, накапливаются без упаковки в Integer
+    public static class Edges {
+
+        private int[] users = new int[64];
+        private int[] friends = new int[64];
+        private int size;
+
+        public void add(int userId, int friendId) {
+            if (size == users.length) {
+                users = Arrays.copyOf(users, size * 2);
+                friends = Arrays.copyOf(friends, size * 2);
+            }
+            users[size] = userId;
+            friends[size] = friendId;
+            size++;
+        }
+    }
+}
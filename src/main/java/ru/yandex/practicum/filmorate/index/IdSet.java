@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntPredicate;
+
+//Множество id в виде битовой карты: бит id выставлен - запись есть.
+//Проверка читает без блокировок, изменения синхронизированы (при росте массив копируется).
+//Кроме битов хранится наибольший известный id: все id до него отмечены точно,
+//а про id выше него (записи, добавленные в БД в обход индекса) спрашиваем БД
+public class IdSet {
+
+    private volatile AtomicLongArray words = new AtomicLongArray(1);
+    private volatile int highWater = 0;
+
+    public synchronized void load(Collection<Integer> ids) {
+        int max = ids.stream().mapToInt(Integer::intValue).max().orElse(0);
+        AtomicLongArray loaded = new AtomicLongArray((max >> 6) + 1);
+        for (Integer id : ids) {
+            loaded.set(id >> 6, loaded.get(id >> 6) | 1L << id);
+        }
+        words = loaded;
+        highWater = max;
+    }
+
+    public synchronized void add(int id) {
+        if (id >> 6 >= words.length()) {
+            AtomicLongArray grown = new AtomicLongArray(Math.max(words.length() * 2, (id >> 6) + 1));
+            for (int i = 0; i < words.length(); i++) {
+                grown.set(i, words.get(i));
+            }
+            words = grown;
+        }
+        words.set(id >> 6, words.get(id >> 6) | 1L << id);
+        //Граница сдвигается после бита - кто увидел новую границу, увидит и бит
+        if (id > highWater) {
+            highWater = id;
+        }
+    }
+
+    public synchronized void remove(int id) {
+        if (id >= 0 && id >> 6 < words.length()) {
+            words.set(id >> 6, words.get(id >> 6) & ~(1L << id));
+        }
+    }
+
+    //database вызывается только для id выше границы, найденный там id запоминается
+    public boolean contains(int id, IntPredicate database) {
+        if (id <= 0) {
+            return false;
+        }
+        int known = highWater;
+        AtomicLongArray current = words;
+        if (id >> 6 < current.length() && (current.get(id >> 6) & 1L << id) != 0) {
+            return true;
+        }
+        if (id <= known) {
+            return false;
+        }
+        if (database.test(id)) {
+            add(id);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,299 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+//Сжатое множество неотрицательных int (по мотивам Roaring bitmap).
+//Число делится на старшие и младшие 16 бит: по старшим выбирается контейнер,
+//а младшие хранятся в нем либо отсортированным массивом (пока значений мало), либо битовой картой на 65536 бит.
+//Так редкие id занимают по 2 байта, а плотные диапазоны - 1 бит на id.
+//Класс не потокобезопасный - синхронизация на стороне владельца (LikeIndex)
+public class IntBitmap {
+
+    //Больше 4096 значений массив char уже занимает больше, чем битовая карта (8 Кб)
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1 << 10;
+
+    private final TreeMap<Integer, Container> containers = new TreeMap<>();
+
+    public boolean add(int value) {
+        return containers.computeIfAbsent(value >>> 16, key -> new Container()).add((char) value);
+    }
+
+    public boolean remove(int value) {
+        Integer key = value >>> 16;
+        Container container = containers.get(key);
+        if (container == null || !container.remove((char) value)) {
+            return false;
+        }
+        if (container.size == 0) {
+            containers.remove(key);
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        Container container = containers.get(value >>> 16);
+        return container != null && container.contains((char) value);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (Container container : containers.values()) {
+            cardinality += container.size;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return containers.isEmpty();
+    }
+
+    public IntBitmap and(IntBitmap other) {
+        IntBitmap result = new IntBitmap();
+        for (Map.Entry<Integer, Container> entry : containers.entrySet()) {
+            Container otherContainer = other.containers.get(entry.getKey());
+            if (otherContainer != null) {
+                Container container = entry.getValue().and(otherContainer);
+                if (container.size > 0) {
+                    result.containers.put(entry.getKey(), container);
+                }
+            }
+        }
+        return result;
+    }
+
+    //Размер пересечения без построения самой карты
+    public int andCardinality(IntBitmap other) {
+        int cardinality = 0;
+        for (Map.Entry<Integer, Container> entry : containers.entrySet()) {
+            Container otherContainer = other.containers.get(entry.getKey());
+            if (otherContainer != null) {
+                cardinality += entry.getValue().andCardinality(otherContainer);
+            }
+        }
+        return cardinality;
+    }
+
+    public IntBitmap andNot(IntBitmap other) {
+        IntBitmap result = new IntBitmap();
+        for (Map.Entry<Integer, Container> entry : containers.entrySet()) {
+            Container otherContainer = other.containers.get(entry.getKey());
+            Container container = otherContainer == null
+                    ? entry.getValue().copy()
+                    : entry.getValue().andNot(otherContainer);
+            if (container.size > 0) {
+                result.containers.put(entry.getKey(), container);
+            }
+        }
+        return result;
+    }
+
+    //Обход в порядке возрастания
+    public void forEach(IntConsumer consumer) {
+        for (Map.Entry<Integer, Container> entry : containers.entrySet()) {
+            entry.getValue().forEach(entry.getKey() << 16, consumer);
+        }
+    }
+
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] position = {0};
+        forEach(value -> values[position[0]++] = value);
+        return values;
+    }
+
+    private static final class Container {
+
+        //Пока bits == null, значения лежат в отсортированном массиве array[0..size)
+        private char[] array = new char[4];
+        private long[] bits;
+        private int size;
+
+        private boolean add(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                int word = value >>> 6;
+                if ((bits[word] & mask) != 0) {
+                    return false;
+                }
+                bits[word] |= mask;
+                size++;
+                return true;
+            }
+            int position = Arrays.binarySearch(array, 0, size, value);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            if (size == ARRAY_MAX) {
+                toBits();
+                return add(value);
+            }
+            if (size == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX, array.length * 2));
+            }
+            System.arraycopy(array, position, array, position + 1, size - position);
+            array[position] = value;
+            size++;
+            return true;
+        }
+
+        private boolean remove(char value) {
+            if (bits != null) {
+                long mask = 1L << value;
+                int word = value >>> 6;
+                if ((bits[word] & mask) == 0) {
+                    return false;
+                }
+                bits[word] &= ~mask;
+                size--;
+                //С запасом, чтобы не переключаться туда-обратно на границе
+                if (size < ARRAY_MAX / 2) {
+                    toArray();
+                }
+                return true;
+            }
+            int position = Arrays.binarySearch(array, 0, size, value);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(array, position + 1, array, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        private boolean contains(char value) {
+            if (bits != null) {
+                return (bits[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, size, value) >= 0;
+        }
+
+        private Container and(Container other) {
+            Container result = new Container();
+            if (bits != null && other.bits != null) {
+                result.bits = new long[WORDS];
+                for (int i = 0; i < WORDS; i++) {
+                    result.bits[i] = bits[i] & other.bits[i];
+                    result.size += Long.bitCount(result.bits[i]);
+                }
+                if (result.size <= ARRAY_MAX) {
+                    result.toArray();
+                }
+                return result;
+            }
+            //Хотя бы один из контейнеров - массив: результат не больше него, идем по нему
+            Container small = bits == null ? this : other;
+            Container large = small == this ? other : this;
+            result.array = new char[Math.max(1, small.size)];
+            for (int i = 0; i < small.size; i++) {
+                if (large.contains(small.array[i])) {
+                    result.array[result.size++] = small.array[i];
+                }
+            }
+            return result;
+        }
+
+        private int andCardinality(Container other) {
+            int cardinality = 0;
+            if (bits != null && other.bits != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    cardinality += Long.bitCount(bits[i] & other.bits[i]);
+                }
+                return cardinality;
+            }
+            Container small = bits == null ? this : other;
+            Container large = small == this ? other : this;
+            for (int i = 0; i < small.size; i++) {
+                if (large.contains(small.array[i])) {
+                    cardinality++;
+                }
+            }
+            return cardinality;
+        }
+
+        private Container andNot(Container other) {
+            Container result = new Container();
+            if (bits == null) {
+                result.array = new char[Math.max(1, size)];
+                for (int i = 0; i < size; i++) {
+                    if (!other.contains(array[i])) {
+                        result.array[result.size++] = array[i];
+                    }
+                }
+                return result;
+            }
+            result.bits = bits.clone();
+            result.size = size;
+            if (other.bits != null) {
+                result.size = 0;
+                for (int i = 0; i < WORDS; i++) {
+                    result.bits[i] &= ~other.bits[i];
+                    result.size += Long.bitCount(result.bits[i]);
+                }
+            } else {
+                for (int i = 0; i < other.size; i++) {
+                    char value = other.array[i];
+                    long mask = 1L << value;
+                    if ((result.bits[value >>> 6] & mask) != 0) {
+                        result.bits[value >>> 6] &= ~mask;
+                        result.size--;
+                    }
+                }
+            }
+            if (result.size <= ARRAY_MAX) {
+                result.toArray();
+            }
+            return result;
+        }
+
+        private Container copy() {
+            Container result = new Container();
+            result.size = size;
+            result.array = array == null ? null : array.clone();
+            result.bits = bits == null ? null : bits.clone();
+            return result;
+        }
+
+        private void forEach(int high, IntConsumer consumer) {
+            if (bits == null) {
+                for (int i = 0; i < size; i++) {
+                    consumer.accept(high | array[i]);
+                }
+                return;
+            }
+            for (int i = 0; i < WORDS; i++) {
+                long word = bits[i];
+                while (word != 0) {
+                    consumer.accept(high | (i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private void toBits() {
+            bits = new long[WORDS];
+            for (int i = 0; i < size; i++) {
+                bits[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        private void toArray() {
+            char[] values = new char[Math.max(1, size)];
+            int position = 0;
+            for (int i = 0; i < WORDS && position < size; i++) {
+                long word = bits[i];
+                while (word != 0) {
+                    values[position++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            array = values;
+            bits = null;
+        }
+    }
+}
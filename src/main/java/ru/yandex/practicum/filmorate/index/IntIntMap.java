@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.index;
+
+//Словарь int -> int без упаковки (см. IntKeyTable)
+public class IntIntMap extends IntKeyTable {
+
+    private int[] values;
+
+    public IntIntMap(int expectedSize) {
+        super(expectedSize);
+        values = new int[capacity()];
+    }
+
+    public void put(int key, int value) {
+        int slot = insert(key);
+        values[slot] = value;
+    }
+
+    public boolean containsKey(int key) {
+        return slotOf(key) >= 0;
+    }
+
+    //Значение по ключу или missing, если ключа нет
+    public int get(int key, int missing) {
+        int slot = slotOf(key);
+        return slot < 0 ? missing : values[slot];
+    }
+
+    @Override
+    void rehash(int capacity, int[] moves) {
+        int[] oldValues = values;
+        values = new int[capacity];
+        for (int i = 0; i < moves.length; i++) {
+            if (moves[i] >= 0) {
+                values[moves[i]] = oldValues[i];
+            }
+        }
+    }
+}
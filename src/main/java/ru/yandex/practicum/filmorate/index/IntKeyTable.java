@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate.index;
+
+//Основа словарей с ключами int без упаковки в Integer: открытая адресация с линейным пробированием.
+//Ключи - положительные id, ключ 0 обозначает пустую ячейку. Значения хранят наследники
+//в своих массивах той же длины, что и keys, и переносят их при росте таблицы.
+//Удаления нет - словарь собирается под одну задачу и выбрасывается. Не потокобезопасен
+abstract class IntKeyTable {
+
+    private int[] keys;
+    private int size;
+
+    IntKeyTable(int expectedSize) {
+        keys = new int[Integer.highestOneBit(Math.max(expectedSize * 2 - 1, 1)) << 1];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    //Ячейка для записи по ключу: новый ключ занимает первую пустую ячейку на своем пути.
+    //При росте таблицы здесь же вызывается rehash, поэтому массив значений читать после вызова
+    int insert(int key) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = find(keys, key);
+        if (keys[slot] == 0) {
+            keys[slot] = key;
+            size++;
+        }
+        return slot;
+    }
+
+    //Ячейка с ключом или -1, если ключа нет
+    int slotOf(int key) {
+        int slot = find(keys, key);
+        return keys[slot] == 0 ? -1 : slot;
+    }
+
+    //Перенос значений при росте таблицы: значение из старой ячейки i переходит в ячейку moves[i],
+    //у пустых ячеек moves[i] = -1
+    abstract void rehash(int capacity, int[] moves);
+
+    //Ячейка с ключом или первая пустая ячейка на его пути
+    private static int find(int[] keys, int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] moves = new int[oldKeys.length];
+        keys = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0) {
+                moves[i] = -1;
+            } else {
+                int slot = find(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                moves[i] = slot;
+            }
+        }
+        rehash(keys.length, moves);
+    }
+
+    //id идут подряд - перемешиваем биты, чтобы соседние ключи не выстраивались в длинные цепочки
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
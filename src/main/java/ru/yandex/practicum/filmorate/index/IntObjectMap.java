@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.index;
+
+//Словарь int -> объект без упаковки ключей (см. IntKeyTable). Если ключа нет, get возвращает null
+public class IntObjectMap<V> extends IntKeyTable {
+
+    private Object[] values;
+
+    public IntObjectMap(int expectedSize) {
+        super(expectedSize);
+        values = new Object[capacity()];
+    }
+
+    public void put(int key, V value) {
+        int slot = insert(key);
+        values[slot] = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = slotOf(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    @Override
+    void rehash(int capacity, int[] moves) {
+        Object[] oldValues = values;
+        values = new Object[capacity];
+        for (int i = 0; i < moves.length; i++) {
+            if (moves[i] >= 0) {
+                values[moves[i]] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//Лайки в памяти в виде сжатых битовых карт: для каждого пользователя - лайкнутые фильмы,
+//для каждого фильма - лайкнувшие пользователи. Общие фильмы - это AND двух карт,
+//а кандидаты в рекомендации - AND-NOT карты соседа и карты пользователя.
+//Число общих лайков с другими пользователями считается при запросе рекомендаций, а не хранится по парам:
+//иначе лайк популярного фильма менял бы O(число лайкнувших) записей под общей блокировкой
+@Slf4j
+@Component
+public class LikeIndex {
+
+    private final Map<Integer, IntBitmap> userLikes = new HashMap<>();
+    private final Map<Integer, IntBitmap> filmLikers = new HashMap<>();
+    //Пользователи, у которых изменились свои лайки - их рекомендации нужно пересчитать.
+    //Изменения у соседей подхватывает полный пересчет (RecommendationStore.refreshAll)
+    private final Set<Integer> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //Сколько самых похожих пользователей учитывается при подборе рекомендаций
+    @Value("${filmorate.recommendations.neighbours:20}")
+    private int neighbours;
+
+    public void load(Map<Integer, ? extends Iterable<Integer>> likesByFilm) {
+        lock.writeLock().lock();
+        try {
+            userLikes.clear();
+            filmLikers.clear();
+            likesByFilm.forEach((filmId, users) -> users.forEach(userId -> link(userId, filmId)));
+            //После загрузки рекомендации все равно строятся полным пересчетом
+            dirtyUsers.clear();
+            log.debug(String.format("Индекс лайков загружен, пользователей: %d, фильмов: %d",
+                    userLikes.size(), filmLikers.size()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addLike(int userId, int filmId) {
+        lock.writeLock().lock();
+        try {
+            link(userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(int userId, int filmId) {
+        lock.writeLock().lock();
+        try {
+            unlink(userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(int userId) {
+        lock.writeLock().lock();
+        try {
+            IntBitmap films = userLikes.get(userId);
+            if (films != null) {
+                for (int filmId : films.toArray()) {
+                    unlink(userId, filmId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(int filmId) {
+        lock.writeLock().lock();
+        try {
+            IntBitmap users = filmLikers.get(filmId);
+            if (users != null) {
+                for (int userId : users.toArray()) {
+                    unlink(userId, filmId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean hasLike(int userId, int filmId) {
+        lock.readLock().lock();
+        try {
+            IntBitmap films = userLikes.get(userId);
+            return films != null && films.contains(filmId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean hasLikes(int userId) {
+        lock.readLock().lock();
+        try {
+            return userLikes.containsKey(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Пользователи, поставившие хотя бы один лайк
+    public int[] getActiveUsers() {
+        lock.readLock().lock();
+        try {
+            return userLikes.keySet().stream().mapToInt(Integer::intValue).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Забирает накопленных с прошлого вызова "грязных" пользователей
+    public int[] drainDirtyUsers() {
+        List<Integer> drained = new ArrayList<>();
+        for (Iterator<Integer> iterator = dirtyUsers.iterator(); iterator.hasNext(); ) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    //Фильмы, которые лайкнули оба пользователя, по возрастанию id
+    public int[] getCommonFilms(int userId, int otherId) {
+        lock.readLock().lock();
+        try {
+            IntBitmap first = userLikes.get(userId);
+            IntBitmap second = userLikes.get(otherId);
+            if (first == null || second == null) {
+                return new int[0];
+            }
+            return first.and(second).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Рекомендации по схожести пользователей: берем neighbours пользователей с наибольшей
+    //косинусной мерой overlap / sqrt(|лайки u| * |лайки v|), каждый их фильм, который пользователь еще не лайкал,
+    //получает сумму мер схожести лайкнувших его соседей. Результат - не больше count фильмов
+    //по убыванию оценки, при равенстве - по возрастанию id.
+    //Кандидаты в соседи - лайкнувшие хотя бы один фильм пользователя, overlap - размер AND их карт лайков
+    public int[] getRecommendations(int userId, int count) {
+        lock.readLock().lock();
+        try {
+            IntBitmap films = userLikes.get(userId);
+            if (films == null) {
+                return new int[0];
+            }
+
+            IntBitmap candidates = new IntBitmap();
+            films.forEach(filmId -> filmLikers.get(filmId).forEach(candidates::add));
+            candidates.remove(userId);
+
+            PriorityQueue<Neighbour> nearest = new PriorityQueue<>(Comparator.comparingDouble(n -> n.similarity));
+            double userLikesCount = films.cardinality();
+            candidates.forEach(otherId -> {
+                IntBitmap otherFilms = userLikes.get(otherId);
+                double similarity = films.andCardinality(otherFilms)
+                        / Math.sqrt(userLikesCount * otherFilms.cardinality());
+                nearest.add(new Neighbour(otherId, similarity));
+                if (nearest.size() > neighbours) {
+                    nearest.poll();
+                }
+            });
+
+            Map<Integer, Double> scores = new HashMap<>();
+            for (Neighbour neighbour : nearest) {
+                userLikes.get(neighbour.userId).andNot(films)
+                        .forEach(filmId -> scores.merge(filmId, neighbour.similarity, Double::sum));
+            }
+
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .limit(count)
+                    .mapToInt(Map.Entry::getKey)
+                    .toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void link(int userId, int filmId) {
+        IntBitmap users = filmLikers.computeIfAbsent(filmId, id -> new IntBitmap());
+        if (!users.add(userId)) {
+            return;
+        }
+        userLikes.computeIfAbsent(userId, id -> new IntBitmap()).add(filmId);
+        dirtyUsers.add(userId);
+    }
+
+    private void unlink(int userId, int filmId) {
+        IntBitmap users = filmLikers.get(filmId);
+        if (users == null || !users.remove(userId)) {
+            return;
+        }
+        if (users.isEmpty()) {
+            filmLikers.remove(filmId);
+        }
+        IntBitmap films = userLikes.get(userId);
+        if (films != null && films.remove(filmId) && films.isEmpty()) {
+            userLikes.remove(userId);
+        }
+        dirtyUsers.add(userId);
+    }
+
+    private static class Neighbour {
+
+        private final int userId;
+        private final double similarity;
+
+        private Neighbour(int userId, double similarity) {
+            this.userId = userId;
+            this.similarity = similarity;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.IntPredicate;
+
+//Рейтинг фильмов по лайкам в памяти: общий, по жанрам и по годам выпуска.
+//Топ-N берется из начала отсортированного набора без обращения к БД
+@Slf4j
+@Component
+public class PopularityIndex {
+
+    //При одинаковом количестве лайков выдаем в порядке ASC id - как и в запросе к БД
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt(Entry::getLikes).reversed()
+            .thenComparingInt(Entry::getFilmId);
+
+    private final NavigableSet<Entry> global = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Integer, NavigableSet<Entry>> byGenre = new ConcurrentHashMap<>();
+    private final Map<Integer, NavigableSet<Entry>> byYear = new ConcurrentHashMap<>();
+    private final Map<Integer, FilmState> films = new ConcurrentHashMap<>();
+
+    public synchronized void load(Map<Integer, Integer> likes, Map<Integer, Integer> years,
+                                  Map<Integer, Set<Integer>> genres) {
+        global.clear();
+        byGenre.clear();
+        byYear.clear();
+        films.clear();
+        for (Map.Entry<Integer, Integer> film : years.entrySet()) {
+            Integer id = film.getKey();
+            FilmState state = new FilmState(likes.getOrDefault(id, 0), film.getValue(),
+                    genres.getOrDefault(id, Set.of()));
+            films.put(id, state);
+            link(id, state);
+        }
+        log.debug(String.format("Рейтинг популярности загружен, фильмов: %d", films.size()));
+    }
+
+    public synchronized void addFilm(int id, int year) {
+        FilmState old = films.get(id);
+        if (old != null) {
+            unlink(id, old);
+        }
+        FilmState state = new FilmState(0, year, Set.of());
+        films.put(id, state);
+        link(id, state);
+    }
+
+    public synchronized void updateYear(int id, int year) {
+        FilmState old = films.get(id);
+        if (old == null || old.year == year) {
+            return;
+        }
+        replace(id, old, new FilmState(old.likes, year, old.genres));
+    }
+
+    public synchronized void setGenres(int id, Collection<Integer> genreIds) {
+        FilmState old = films.get(id);
+        if (old == null) {
+            return;
+        }
+        replace(id, old, new FilmState(old.likes, old.year, Set.copyOf(genreIds)));
+    }
+
+    public synchronized void changeLikes(int id, int delta) {
+        FilmState old = films.get(id);
+        if (old == null || delta == 0) {
+            return;
+        }
+        replace(id, old, new FilmState(old.likes + delta, old.year, old.genres));
+    }
+
+    public synchronized void removeFilm(int id) {
+        FilmState old = films.remove(id);
+        if (old != null) {
+            unlink(id, old);
+        }
+    }
+
+    public int getLikes(int id) {
+        FilmState state = films.get(id);
+        return state == null ? 0 : state.likes;
+    }
+
+    public List<Integer> getTop(int count, Integer genreId, Integer year) {
+        return getTopAfter(count, genreId, year, null, null);
+    }
+
+    //Топ-N, начиная строго после позиции (afterLikes, afterId) - для постраничной выдачи
+    public List<Integer> getTopAfter(int count, Integer genreId, Integer year, Integer afterLikes, Integer afterId) {
+        NavigableSet<Entry> source;
+        if (genreId != null && year != null) {
+            //Идем по меньшему из двух наборов и фильтруем по второму признаку
+            NavigableSet<Entry> genreSet = byGenre.getOrDefault(genreId, Collections.emptyNavigableSet());
+            NavigableSet<Entry> yearSet = byYear.getOrDefault(year, Collections.emptyNavigableSet());
+            boolean genreSmaller = genreSet.size() <= yearSet.size();
+            source = tail(genreSmaller ? genreSet : yearSet, afterLikes, afterId);
+            return collect(source, count, id -> {
+                FilmState state = films.get(id);
+                return state != null && (genreSmaller ? state.year == year : state.genres.contains(genreId));
+            });
+        } else if (genreId != null) {
+            source = byGenre.getOrDefault(genreId, Collections.emptyNavigableSet());
+        } else if (year != null) {
+            source = byYear.getOrDefault(year, Collections.emptyNavigableSet());
+        } else {
+            source = global;
+        }
+        return collect(tail(source, afterLikes, afterId), count, id -> true);
+    }
+
+    private NavigableSet<Entry> tail(NavigableSet<Entry> source, Integer afterLikes, Integer afterId) {
+        if (afterLikes == null || afterId == null) {
+            return source;
+        }
+        return source.tailSet(new Entry(afterLikes, afterId), false);
+    }
+
+    //Наборы читаются без блокировки: пока replace переносит фильм, он может встретиться в наборе дважды,
+    //поэтому повторы отбрасываем - остается позиция, которая идет раньше
+    private List<Integer> collect(NavigableSet<Entry> source, int count, IntPredicate filter) {
+        List<Integer> ids = new ArrayList<>(Math.min(count, source.size()));
+        Set<Integer> seen = new HashSet<>();
+        for (Entry entry : source) {
+            if (ids.size() >= count) {
+                break;
+            }
+            if (filter.test(entry.filmId) && seen.add(entry.filmId)) {
+                ids.add(entry.filmId);
+            }
+        }
+        return ids;
+    }
+
+    //Сначала добавляем новую позицию, потом убираем старую - так читатель не застанет момент,
+    //когда фильма нет в наборе. Старая позиция убирается только там, где она не совпадает с новой
+    private void replace(int id, FilmState old, FilmState state) {
+        films.put(id, state);
+        link(id, state);
+        Entry entry = new Entry(old.likes, id);
+        boolean likesChanged = old.likes != state.likes;
+        if (likesChanged) {
+            global.remove(entry);
+        }
+        if (likesChanged || old.year != state.year) {
+            NavigableSet<Entry> yearSet = byYear.get(old.year);
+            if (yearSet != null) {
+                yearSet.remove(entry);
+            }
+        }
+        for (Integer genreId : old.genres) {
+            if (likesChanged || !state.genres.contains(genreId)) {
+                NavigableSet<Entry> genreSet = byGenre.get(genreId);
+                if (genreSet != null) {
+                    genreSet.remove(entry);
+                }
+            }
+        }
+    }
+
+    private void link(int id, FilmState state) {
+        Entry entry = new Entry(state.likes, id);
+        global.add(entry);
+        byYear.computeIfAbsent(state.year, y -> new ConcurrentSkipListSet<>(ORDER)).add(entry);
+        for (Integer genreId : state.genres) {
+            byGenre.computeIfAbsent(genreId, g -> new ConcurrentSkipListSet<>(ORDER)).add(entry);
+        }
+    }
+
+    private void unlink(int id, FilmState state) {
+        Entry entry = new Entry(state.likes, id);
+        global.remove(entry);
+        NavigableSet<Entry> yearSet = byYear.get(state.year);
+        if (yearSet != null) {
+            yearSet.remove(entry);
+        }
+        for (Integer genreId : state.genres) {
+            NavigableSet<Entry> genreSet = byGenre.get(genreId);
+            if (genreSet != null) {
+                genreSet.remove(entry);
+            }
+        }
+    }
+
+    private static class FilmState {
+
+        private final int likes;
+        private final int year;
+        private final Set<Integer> genres;
+
+        private FilmState(int likes, int year, Set<Integer> genres) {
+            this.likes = likes;
+            this.year = year;
+            this.genres = genres;
+        }
+    }
+
+    private static class Entry {
+
+        private final int likes;
+        private final int filmId;
+
+        private Entry(int likes, int filmId) {
+            this.likes = likes;
+            this.filmId = filmId;
+        }
+
+        private int getLikes() {
+            return likes;
+        }
+
+        private int getFilmId() {
+            return filmId;
+        }
+    }
+}
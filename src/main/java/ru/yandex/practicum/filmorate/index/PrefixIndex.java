@@ -0,0 +1,180 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+//Поиск по началу слова для подсказок при наборе.
+//Для каждого слова названия хранится ключ "от этого слова до конца названия", ключи лежат
+//в отсортированных массивах: совпадения с префиксом - это непрерывный отрезок, который находится бинарным поиском.
+//Массивы не меняются после создания, а снимок публикуется через volatile - чтение идет без блокировок.
+//Чтобы запись не копировала весь индекс, снимок состоит из большой основы и небольшой добавки:
+//изменение пересобирает только добавку и набор id, чьи ключи в основе устарели, а когда они дорастают
+//до ~sqrt(размера основы), все сливается в новую основу. Так запись стоит в среднем O(sqrt(n)), а не O(n).
+//Синхронизация изменений - на стороне владельца (SearchIndex)
+public class PrefixIndex {
+
+    //Меньше этого добавка не сливается с основой даже при маленькой основе
+    private static final int MIN_DELTA = 256;
+    private static final Part EMPTY = new Part(new String[0], new int[0]);
+
+    private final Map<Integer, String> names = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot = new Snapshot(EMPTY, EMPTY, Set.of());
+
+    public void load(Map<Integer, String> values) {
+        names.clear();
+        List<Key> keys = new ArrayList<>();
+        values.forEach((id, name) -> {
+            names.put(id, name);
+            keys.addAll(keys(id, name));
+        });
+        keys.sort(Comparator.naturalOrder());
+        snapshot = new Snapshot(merge(EMPTY, id -> false, keys), EMPTY, Set.of());
+    }
+
+    public void put(int id, String name) {
+        names.put(id, name);
+        List<Key> keys = keys(id, name);
+        keys.sort(Comparator.naturalOrder());
+        publish(id, keys);
+    }
+
+    public void remove(int id) {
+        if (names.remove(id) != null) {
+            publish(id, List.of());
+        }
+    }
+
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    //Все id, у которых какое-то слово начинается с prefix (prefix уже нормализован).
+    //Один id может встретиться несколько раз - по разу на каждое подходящее слово
+    public void forEachMatch(String prefix, IntConsumer consumer) {
+        Snapshot current = snapshot;
+        current.base.forEachMatch(prefix, id -> {
+            if (!current.stale.contains(id)) {
+                consumer.accept(id);
+            }
+        });
+        current.delta.forEachMatch(prefix, consumer);
+    }
+
+    //Новые ключи id попадают в добавку, а его ключи в основе (если были) считаются устаревшими
+    private void publish(int id, List<Key> keys) {
+        Snapshot current = snapshot;
+        Part delta = merge(current.delta, other -> other == id, keys);
+        Set<Integer> stale = new HashSet<>(current.stale);
+        stale.add(id);
+        if (delta.ids.length + stale.size() > Math.max(MIN_DELTA, Math.sqrt(current.base.ids.length))) {
+            snapshot = new Snapshot(merge(current.base, stale::contains, delta.keys()), EMPTY, Set.of());
+        } else {
+            snapshot = new Snapshot(current.base, delta, Collections.unmodifiableSet(stale));
+        }
+    }
+
+    //Ключи old без отброшенных id плюс новые ключи - за один проход слиянием двух отсортированных списков
+    private static Part merge(Part old, IntPredicate removed, List<Key> added) {
+        int oldCount = 0;
+        for (int id : old.ids) {
+            if (!removed.test(id)) {
+                oldCount++;
+            }
+        }
+        String[] keys = new String[oldCount + added.size()];
+        int[] ids = new int[keys.length];
+        int i = 0;
+        int j = 0;
+        int position = 0;
+        while (i < old.keys.length || j < added.size()) {
+            if (i < old.keys.length && removed.test(old.ids[i])) {
+                i++;
+                continue;
+            }
+            boolean takeOld = j == added.size()
+                    || (i < old.keys.length && old.keys[i].compareTo(added.get(j).key) <= 0);
+            if (takeOld) {
+                keys[position] = old.keys[i];
+                ids[position++] = old.ids[i++];
+            } else {
+                keys[position] = added.get(j).key;
+                ids[position++] = added.get(j++).id;
+            }
+        }
+        return new Part(keys, ids);
+    }
+
+    private static List<Key> keys(int id, String name) {
+        String normalized = SearchIndex.normalize(name);
+        List<Key> keys = new ArrayList<>();
+        for (int i = 0; i < normalized.length(); i++) {
+            boolean wordStart = Character.isLetterOrDigit(normalized.charAt(i))
+                    && (i == 0 || !Character.isLetterOrDigit(normalized.charAt(i - 1)));
+            if (wordStart) {
+                keys.add(new Key(normalized.substring(i), id));
+            }
+        }
+        return keys;
+    }
+
+    private static class Snapshot {
+
+        private final Part base;
+        private final Part delta;
+        private final Set<Integer> stale;
+
+        private Snapshot(Part base, Part delta, Set<Integer> stale) {
+            this.base = base;
+            this.delta = delta;
+            this.stale = stale;
+        }
+    }
+
+    private static class Part {
+
+        private final String[] keys;
+        private final int[] ids;
+
+        private Part(String[] keys, int[] ids) {
+            this.keys = keys;
+            this.ids = ids;
+        }
+
+        private void forEachMatch(String prefix, IntConsumer consumer) {
+            int position = Arrays.binarySearch(keys, prefix);
+            if (position < 0) {
+                position = -position - 1;
+            }
+            while (position < keys.length && keys[position].startsWith(prefix)) {
+                consumer.accept(ids[position]);
+                position++;
+            }
+        }
+
+        private List<Key> keys() {
+            List<Key> list = new ArrayList<>(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                list.add(new Key(keys[i], ids[i]));
+            }
+            return list;
+        }
+    }
+
+    private static class Key implements Comparable<Key> {
+
+        private final String key;
+        private final int id;
+
+        private Key(String key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+//Наличие фильмов, пользователей и отзывов в БД - для проверок перед записью без запроса к БД.
+//Заполняется при старте и поддерживается DAO при добавлении/удалении.
+//Режиссёров проверяет ReferenceRegistry
+@Getter
+@Component
+public class PresenceIndex {
+
+    private final IdSet films = new IdSet();
+    private final IdSet users = new IdSet();
+    //Отзывы удаляются в БД каскадно вместе с фильмом или автором - DAO фильмов и пользователей чистят и их
+    private final IdSet reviews = new IdSet();
+}
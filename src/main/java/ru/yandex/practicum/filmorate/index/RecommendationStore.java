@@ -0,0 +1,172 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+//Заранее посчитанные рекомендации пользователей.
+//Фоновая задача раз в filmorate.recommendations.refresh-interval мс пересчитывает "грязных" пользователей
+//(изменились их лайки), а раз в filmorate.recommendations.full-refresh-interval мс -
+//всех пользователей с лайками: так догоняются изменения у соседей, которые не помечаются грязными.
+//Пересчет идет параллельно в ForkJoinPool, запрос на рекомендации только читает готовый список.
+//Планировщик только отправляет пересчет в пул и не ждет его: поток планировщика общий
+//с другими фоновыми задачами (сброс лайков, сохранение трендов), и долгий пересчет не должен их задерживать
+@Slf4j
+@Component
+public class RecommendationStore {
+
+    //Меньше этого числа пользователей задача дальше не делится
+    private static final int BATCH_SIZE = 64;
+
+    private final LikeIndex likeIndex;
+    private final Map<Integer, Recommendations> recommendations = new ConcurrentHashMap<>();
+    private final ForkJoinPool pool = new ForkJoinPool();
+    private final int size;
+    //Пересчет, отправленный планировщиком, и запрошен ли полный пересчет, пока тот еще шел
+    private final Object scheduling = new Object();
+    private ForkJoinTask<?> scheduled;
+    private boolean fullRefreshRequested;
+
+    public RecommendationStore(LikeIndex likeIndex,
+                               @Value("${filmorate.recommendations.materialized-count:100}") int size) {
+        this.likeIndex = likeIndex;
+        this.size = size;
+    }
+
+    //null, если для пользователя еще ничего не посчитано
+    public Recommendations get(int userId) {
+        return recommendations.get(userId);
+    }
+
+    public void remove(int userId) {
+        recommendations.remove(userId);
+    }
+
+    //Сколько фильмов хранится на пользователя - длинные списки считаются по запросу
+    public int getSize() {
+        return size;
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.refresh-interval:5000}")
+    public void scheduleRefreshDirty() {
+        schedule(false);
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.full-refresh-interval:600000}")
+    public void scheduleRefreshAll() {
+        schedule(true);
+    }
+
+    public synchronized void refreshDirty() {
+        int[] users = likeIndex.drainDirtyUsers();
+        if (users.length > 0) {
+            refresh(users);
+            log.debug(String.format("Пересчитаны рекомендации для %d измененных пользователей", users.length));
+        }
+    }
+
+    public synchronized void refreshAll() {
+        //Сначала те, чьи лайки поменялись, потом все остальные
+        refreshDirty();
+        int[] users = likeIndex.getActiveUsers();
+        refresh(users);
+        //Пользователи, у которых не осталось лайков
+        recommendations.keySet().removeIf(userId -> !likeIndex.hasLikes(userId));
+        log.debug(String.format("Пересчитаны рекомендации для всех %d пользователей с лайками", users.length));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    //Пока предыдущий пересчет идет, новый не запускается: грязные пользователи копятся до следующего раза,
+    //а запрошенный полный пересчет запустится первым же свободным тактом
+    private void schedule(boolean full) {
+        synchronized (scheduling) {
+            fullRefreshRequested |= full;
+            if (scheduled != null && !scheduled.isDone()) {
+                return;
+            }
+            boolean refreshAll = fullRefreshRequested;
+            fullRefreshRequested = false;
+            scheduled = pool.submit(() -> {
+                //Ошибку задачи в пуле никто не прочитает - пишем ее в лог сами
+                try {
+                    if (refreshAll) {
+                        refreshAll();
+                    } else {
+                        refreshDirty();
+                    }
+                } catch (RuntimeException exp) {
+                    log.error("Не удалось пересчитать рекомендации: {}", exp.getMessage());
+                }
+            });
+        }
+    }
+
+    private void refresh(int[] users) {
+        pool.invoke(new RefreshTask(users, 0, users.length));
+    }
+
+    private class RefreshTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] users;
+        private final int from;
+        private final int to;
+
+        private RefreshTask(int[] users, int from, int to) {
+            this.users = users;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                for (int i = from; i < to; i++) {
+                    int userId = users[i];
+                    int[] films = likeIndex.getRecommendations(userId, size);
+                    if (films.length == 0 && !likeIndex.hasLikes(userId)) {
+                        recommendations.remove(userId);
+                    } else {
+                        recommendations.put(userId, new Recommendations(films, System.currentTimeMillis()));
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RefreshTask(users, from, middle), new RefreshTask(users, middle, to));
+        }
+    }
+
+    public static class Recommendations {
+
+        private final int[] films;
+        private final long computedAt;
+
+        private Recommendations(int[] films, long computedAt) {
+            this.films = films;
+            this.computedAt = computedAt;
+        }
+
+        //По убыванию оценки, не больше getSize() фильмов
+        public int[] getFilms() {
+            return films;
+        }
+
+        public long getComputedAt() {
+            return computedAt;
+        }
+    }
+}
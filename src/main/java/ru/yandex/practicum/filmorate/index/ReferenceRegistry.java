@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+//Справочники MPA, жанров и режиссёров в памяти.
+//Данные лежат в массивах с индексом по id, сами массивы после создания не меняются:
+//любое изменение собирает новый снимок и подменяет ссылку целиком, поэтому чтение идет без блокировок.
+//MPA и жанры - неизменяемые данные из data.sql, режиссёры меняются через DirectorDbStorage
+@Slf4j
+@Component
+public class ReferenceRegistry {
+
+    private volatile Snapshot snapshot = new Snapshot(new Mpa[0], new Genre[0], new Director[0]);
+
+    public synchronized void loadMpa(Collection<Mpa> mpa) {
+        snapshot = new Snapshot(toArray(mpa, Mpa::getId, Mpa[]::new), snapshot.genres, snapshot.directors);
+        log.debug(String.format("В справочник загружено MPA: %d", mpa.size()));
+    }
+
+    public synchronized void loadGenres(Collection<Genre> genres) {
+        snapshot = new Snapshot(snapshot.mpa, toArray(genres, Genre::getId, Genre[]::new), snapshot.directors);
+        log.debug(String.format("В справочник загружено жанров: %d", genres.size()));
+    }
+
+    public synchronized void loadDirectors(Collection<Director> directors) {
+        snapshot = new Snapshot(snapshot.mpa, snapshot.genres, toArray(directors, Director::getId, Director[]::new));
+    }
+
+    public synchronized void putDirector(Director director) {
+        Director[] directors = Arrays.copyOf(snapshot.directors,
+                Math.max(snapshot.directors.length, director.getId() + 1));
+        //Храним свою копию - объект из запроса может измениться после сохранения
+        directors[director.getId()] = new Director(director.getId(), director.getName());
+        snapshot = new Snapshot(snapshot.mpa, snapshot.genres, directors);
+    }
+
+    public synchronized void removeDirector(int id) {
+        if (get(snapshot.directors, id) == null) {
+            return;
+        }
+        Director[] directors = snapshot.directors.clone();
+        directors[id] = null;
+        snapshot = new Snapshot(snapshot.mpa, snapshot.genres, directors);
+    }
+
+    //null, если такого id нет
+    public Mpa getMpa(int id) {
+        return get(snapshot.mpa, id);
+    }
+
+    public Genre getGenre(int id) {
+        return get(snapshot.genres, id);
+    }
+
+    public Director getDirector(int id) {
+        return get(snapshot.directors, id);
+    }
+
+    //Списки - по возрастанию id
+    public List<Mpa> getAllMpa() {
+        return toList(snapshot.mpa);
+    }
+
+    public List<Genre> getAllGenres() {
+        return toList(snapshot.genres);
+    }
+
+    private static <T> T get(T[] values, int id) {
+        return id >= 0 && id < values.length ? values[id] : null;
+    }
+
+    private static <T> List<T> toList(T[] values) {
+        List<T> list = new ArrayList<>();
+        for (T value : values) {
+            if (value != null) {
+                list.add(value);
+            }
+        }
+        return list;
+    }
+
+    private static <T> T[] toArray(Collection<T> values, Function<T, Integer> id, IntFunction<T[]> factory) {
+        int size = values.stream().mapToInt(value -> id.apply(value) + 1).max().orElse(0);
+        T[] array = factory.apply(size);
+        for (T value : values) {
+            array[id.apply(value)] = value;
+        }
+        return array;
+    }
+
+    private static class Snapshot {
+
+        private final Mpa[] mpa;
+        private final Genre[] genres;
+        private final Director[] directors;
+
+        private Snapshot(Mpa[] mpa, Genre[] genres, Director[] directors) {
+            this.mpa = mpa;
+            this.genres = genres;
+            this.directors = directors;
+        }
+    }
+}
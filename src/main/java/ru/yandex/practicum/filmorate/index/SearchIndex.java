@@ -0,0 +1,318 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.SuggestionType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+
+//Поиск подстроки в названиях фильмов и именах режиссёров без полного перебора таблиц.
+//Каждое название режется на триграммы (по 3 подряд идущих символа), для каждой триграммы
+//хранится битовая карта id. Кандидаты на запрос - пересечение карт всех триграмм запроса,
+//после чего каждый кандидат проверяется на настоящее вхождение подстроки.
+//Запросы короче 3 символов проверяются перебором названий в памяти.
+//Для подсказок при наборе рядом хранятся индексы по началу слов (PrefixIndex).
+//Изменения идут под блокировкой записи, поиск подстроки - под блокировкой чтения,
+//а подсказки читают только неизменяемые снимки и обходятся без блокировки
+@Slf4j
+@Component
+public class SearchIndex {
+
+    private static final int GRAM = 3;
+    private static final Comparator<Suggestion> SUGGESTION_ORDER = Comparator.comparingInt(Suggestion::getLikes)
+            .reversed()
+            .thenComparing(Suggestion::getType)
+            .thenComparingInt(Suggestion::getId);
+
+    private final Map<Integer, String> titles = new HashMap<>();
+    private final Map<String, IntBitmap> titleGrams = new HashMap<>();
+    private final Map<Integer, String> directorNames = new HashMap<>();
+    private final Map<String, IntBitmap> directorGrams = new HashMap<>();
+    //Связи фильм - режиссёр в обе стороны. Фильмы режиссёра - отсортированный массив,
+    //который при изменении заменяется копией: его читают подсказки без блокировки
+    private final Map<Integer, int[]> directorFilms = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> filmDirectors = new HashMap<>();
+    private final PrefixIndex titlePrefixes = new PrefixIndex();
+    private final PrefixIndex directorPrefixes = new PrefixIndex();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //Поиск без учета регистра, "ё" и "е" считаются одной буквой
+    public static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    public void loadFilms(Map<Integer, String> films) {
+        lock.writeLock().lock();
+        try {
+            titles.clear();
+            titleGrams.clear();
+            films.forEach((id, title) -> put(id, title, titles, titleGrams));
+            titlePrefixes.load(films);
+            log.debug(String.format("Поисковый индекс названий загружен, фильмов: %d", titles.size()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void loadDirectors(Map<Integer, String> directors, Map<Integer, ? extends Collection<Integer>> films) {
+        lock.writeLock().lock();
+        try {
+            directorNames.clear();
+            directorGrams.clear();
+            directorFilms.clear();
+            filmDirectors.clear();
+            directors.forEach((id, name) -> put(id, name, directorNames, directorGrams));
+            directorPrefixes.load(directors);
+            films.forEach(this::link);
+            log.debug(String.format("Поисковый индекс режиссёров загружен, режиссёров: %d", directorNames.size()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putFilm(int id, String title) {
+        lock.writeLock().lock();
+        try {
+            put(id, title, titles, titleGrams);
+            titlePrefixes.put(id, title);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(int id) {
+        lock.writeLock().lock();
+        try {
+            remove(id, titles, titleGrams);
+            titlePrefixes.remove(id);
+            unlink(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putDirector(int id, String name) {
+        lock.writeLock().lock();
+        try {
+            put(id, name, directorNames, directorGrams);
+            directorPrefixes.put(id, name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDirector(int id) {
+        lock.writeLock().lock();
+        try {
+            remove(id, directorNames, directorGrams);
+            directorPrefixes.remove(id);
+            //Связи с фильмами удаляются в БД каскадно - повторяем это здесь
+            int[] films = directorFilms.remove(id);
+            if (films != null) {
+                for (int filmId : films) {
+                    Set<Integer> directors = filmDirectors.get(filmId);
+                    if (directors != null) {
+                        directors.remove(id);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean hasDirector(int id) {
+        lock.readLock().lock();
+        try {
+            return directorNames.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void setFilmDirectors(int filmId, Collection<Integer> directorIds) {
+        lock.writeLock().lock();
+        try {
+            unlink(filmId);
+            link(filmId, directorIds);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //id фильмов, в названии или у режиссёра которых есть подстрока query, по возрастанию id.
+    //Фильм с несколькими подходящими режиссёрами попадает в результат один раз
+    public int[] search(String query, boolean byTitle, boolean byDirector) {
+        String normalized = normalize(query);
+        lock.readLock().lock();
+        try {
+            IntBitmap result = new IntBitmap();
+            if (byTitle) {
+                find(normalized, titles, titleGrams).forEach(result::add);
+            }
+            if (byDirector) {
+                find(normalized, directorNames, directorGrams).forEach(directorId -> {
+                    for (int filmId : directorFilms.getOrDefault(directorId, new int[0])) {
+                        result.add(filmId);
+                    }
+                });
+            }
+            return result.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Не больше count фильмов и режиссёров, у которых какое-то слово начинается с prefix,
+    //по убыванию лайков (у режиссёра - суммы лайков его фильмов), при равенстве фильмы раньше режиссёров
+    public List<Suggestion> suggest(String prefix, boolean byTitle, boolean byDirector, int count,
+                                    IntUnaryOperator filmLikes) {
+        String normalized = normalize(prefix);
+        PriorityQueue<Suggestion> top = new PriorityQueue<>(SUGGESTION_ORDER.reversed());
+        if (byTitle) {
+            Set<Integer> seen = new HashSet<>();
+            titlePrefixes.forEachMatch(normalized, id -> {
+                String name = titlePrefixes.getName(id);
+                //Фильм могли удалить после того, как мы взяли снимок
+                if (name != null && seen.add(id)) {
+                    offer(top, new Suggestion(SuggestionType.FILM, id, name, filmLikes.applyAsInt(id)), count);
+                }
+            });
+        }
+        if (byDirector) {
+            Set<Integer> seen = new HashSet<>();
+            directorPrefixes.forEachMatch(normalized, id -> {
+                String name = directorPrefixes.getName(id);
+                if (name != null && seen.add(id)) {
+                    int likes = 0;
+                    for (int filmId : directorFilms.getOrDefault(id, new int[0])) {
+                        likes += filmLikes.applyAsInt(filmId);
+                    }
+                    offer(top, new Suggestion(SuggestionType.DIRECTOR, id, name, likes), count);
+                }
+            });
+        }
+        List<Suggestion> suggestions = new ArrayList<>(top);
+        suggestions.sort(SUGGESTION_ORDER);
+        return suggestions;
+    }
+
+    //Куча хранит count лучших, в голове - худший из них
+    private static void offer(PriorityQueue<Suggestion> top, Suggestion suggestion, int count) {
+        top.add(suggestion);
+        if (top.size() > count) {
+            top.poll();
+        }
+    }
+
+    private IntBitmap find(String query, Map<Integer, String> texts, Map<String, IntBitmap> grams) {
+        IntBitmap found = new IntBitmap();
+        if (query.length() < GRAM) {
+            texts.forEach((id, text) -> {
+                if (text.contains(query)) {
+                    found.add(id);
+                }
+            });
+            return found;
+        }
+
+        //Начинаем с самой редкой триграммы - так промежуточные пересечения меньше
+        List<IntBitmap> bitmaps = new ArrayList<>();
+        for (String gram : grams(query)) {
+            IntBitmap bitmap = grams.get(gram);
+            if (bitmap == null) {
+                return found;
+            }
+            bitmaps.add(bitmap);
+        }
+        bitmaps.sort(Comparator.comparingInt(IntBitmap::cardinality));
+        IntBitmap candidates = bitmaps.get(0);
+        for (int i = 1; i < bitmaps.size() && !candidates.isEmpty(); i++) {
+            candidates = candidates.and(bitmaps.get(i));
+        }
+
+        //Совпадение всех триграмм еще не значит, что они идут подряд
+        candidates.forEach(id -> {
+            if (texts.get(id).contains(query)) {
+                found.add(id);
+            }
+        });
+        return found;
+    }
+
+    private void put(int id, String text, Map<Integer, String> texts, Map<String, IntBitmap> grams) {
+        remove(id, texts, grams);
+        String normalized = normalize(text);
+        texts.put(id, normalized);
+        for (String gram : grams(normalized)) {
+            grams.computeIfAbsent(gram, g -> new IntBitmap()).add(id);
+        }
+    }
+
+    private void remove(int id, Map<Integer, String> texts, Map<String, IntBitmap> grams) {
+        String old = texts.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (String gram : grams(old)) {
+            IntBitmap bitmap = grams.get(gram);
+            if (bitmap != null && bitmap.remove(id) && bitmap.isEmpty()) {
+                grams.remove(gram);
+            }
+        }
+    }
+
+    private void link(int filmId, Collection<Integer> directorIds) {
+        if (directorIds.isEmpty()) {
+            return;
+        }
+        filmDirectors.put(filmId, new HashSet<>(directorIds));
+        for (Integer directorId : directorIds) {
+            int[] films = directorFilms.getOrDefault(directorId, new int[0]);
+            int position = Arrays.binarySearch(films, filmId);
+            if (position < 0) {
+                position = -position - 1;
+                int[] copy = new int[films.length + 1];
+                System.arraycopy(films, 0, copy, 0, position);
+                copy[position] = filmId;
+                System.arraycopy(films, position, copy, position + 1, films.length - position);
+                directorFilms.put(directorId, copy);
+            }
+        }
+    }
+
+    private void unlink(int filmId) {
+        Set<Integer> directors = filmDirectors.remove(filmId);
+        if (directors == null) {
+            return;
+        }
+        for (Integer directorId : directors) {
+            int[] films = directorFilms.get(directorId);
+            int position = films == null ? -1 : Arrays.binarySearch(films, filmId);
+            if (position < 0) {
+                continue;
+            }
+            if (films.length == 1) {
+                directorFilms.remove(directorId);
+            } else {
+                int[] copy = new int[films.length - 1];
+                System.arraycopy(films, 0, copy, 0, position);
+                System.arraycopy(films, position + 1, copy, position, films.length - position - 1);
+                directorFilms.put(directorId, copy);
+            }
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
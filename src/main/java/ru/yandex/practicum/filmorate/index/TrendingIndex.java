@@ -0,0 +1,194 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+//Экспоненциально затухающий рейтинг лайков для каждого горизонта из TrendingPeriod.
+//Лайк в момент t дает вклад exp(-(now - t) / period). Множитель exp(-now / period) общий для всех фильмов,
+//поэтому храним значения относительно опорной точки (landmark) и порядок фильмов не меняется со временем:
+//новый лайк пересортировывает только свой фильм, а топ-N читается из начала набора
+@Component
+public class TrendingIndex {
+
+    //Меньше этого значения фильм из рейтинга выкидываем - его вклад уже неотличим от нуля
+    private static final double EPSILON = 1e-9;
+    //Через сколько периодов сдвигаем опорную точку, чтобы exp не переполнился
+    private static final int RESCALE_PERIODS = 30;
+
+    private final Map<TrendingPeriod, PeriodScores> periods = new EnumMap<>(TrendingPeriod.class);
+
+    public TrendingIndex() {
+        long now = System.currentTimeMillis();
+        for (TrendingPeriod period : TrendingPeriod.values()) {
+            periods.put(period, new PeriodScores(period.getDuration().toMillis(), now));
+        }
+    }
+
+    public void addLike(int filmId, long time) {
+        periods.values().forEach(scores -> scores.add(filmId, time, 1));
+    }
+
+    public void removeLike(int filmId, long time) {
+        periods.values().forEach(scores -> scores.add(filmId, time, -1));
+    }
+
+    public void removeFilm(int filmId) {
+        periods.values().forEach(scores -> scores.remove(filmId));
+    }
+
+    public List<Integer> getTop(TrendingPeriod period, int count) {
+        return periods.get(period).getTop(count);
+    }
+
+    //Текущие значения рейтинга на момент now - для сохранения в БД
+    public Map<Integer, Double> getScores(TrendingPeriod period, long now) {
+        return periods.get(period).getScores(now);
+    }
+
+    //Загрузка значений, посчитанных на момент time (например, из сохраненной в БД копии)
+    public void load(TrendingPeriod period, Map<Integer, Double> scores, long time) {
+        periods.get(period).load(scores, time);
+    }
+
+    public void rescale(long now) {
+        periods.values().forEach(scores -> scores.rescale(now));
+    }
+
+    private static class PeriodScores {
+
+        private final double period;
+        private long landmark;
+        private final Map<Integer, Double> values = new HashMap<>();
+        //Читается без блокировки: при сдвиге опорной точки рейтинг собирается заново и подменяется целиком
+        private volatile NavigableSet<Entry> ranking = newRanking();
+        //Счетчик изменений: нечетный, пока идет запись. Фильм, поднявшийся выше уже пройденной позиции,
+        //читатель не увидит - по счетчику он понимает, что проход надо повторить
+        private volatile long modCount;
+
+        private PeriodScores(long period, long landmark) {
+            this.period = period;
+            this.landmark = landmark;
+        }
+
+        private synchronized void add(int filmId, long time, int sign) {
+            if ((time - landmark) / period > RESCALE_PERIODS) {
+                rescale(time);
+            }
+            double value = values.getOrDefault(filmId, 0.0) + sign * Math.exp((time - landmark) / period);
+            put(filmId, value);
+        }
+
+        private synchronized void remove(int filmId) {
+            modCount++;
+            try {
+                Double old = values.remove(filmId);
+                if (old != null) {
+                    ranking.remove(new Entry(old, filmId));
+                }
+            } finally {
+                modCount++;
+            }
+        }
+
+        private static NavigableSet<Entry> newRanking() {
+            return new ConcurrentSkipListSet<>(
+                    Comparator.comparingDouble(Entry::getScore).reversed().thenComparingInt(Entry::getFilmId));
+        }
+
+        private List<Integer> getTop(int count) {
+            for (int attempt = 0; attempt < 3; attempt++) {
+                long before = modCount;
+                if (before % 2 == 0) {
+                    List<Integer> ids = scan(count);
+                    if (modCount == before) {
+                        return ids;
+                    }
+                }
+            }
+            //Записи идут подряд - читаем под блокировкой, чтобы не повторять проход бесконечно
+            synchronized (this) {
+                return scan(count);
+            }
+        }
+
+        private List<Integer> scan(int count) {
+            //Емкость по числу фильмов в рейтинге, а не по count из запроса; размер словаря без блокировки -
+            //только оценка, на результат он не влияет
+            List<Integer> ids = new ArrayList<>(Math.min(count, values.size()));
+            for (Entry entry : ranking) {
+                if (ids.size() >= count) {
+                    break;
+                }
+                ids.add(entry.filmId);
+            }
+            return ids;
+        }
+
+        private synchronized Map<Integer, Double> getScores(long now) {
+            double factor = Math.exp(-(now - landmark) / period);
+            Map<Integer, Double> scores = new HashMap<>();
+            values.forEach((filmId, value) -> scores.put(filmId, value * factor));
+            return scores;
+        }
+
+        private synchronized void load(Map<Integer, Double> scores, long time) {
+            double factor = Math.exp((time - landmark) / period);
+            scores.forEach((filmId, score) -> put(filmId, values.getOrDefault(filmId, 0.0) + score * factor));
+        }
+
+        private synchronized void rescale(long now) {
+            if (now <= landmark) {
+                return;
+            }
+            double factor = Math.exp(-(now - landmark) / period);
+            NavigableSet<Entry> rescaled = newRanking();
+            values.replaceAll((filmId, value) -> value * factor);
+            values.values().removeIf(value -> value <= EPSILON);
+            values.forEach((filmId, value) -> rescaled.add(new Entry(value, filmId)));
+            landmark = now;
+            //Порядок фильмов тот же - подмена набора счетчик не трогает
+            ranking = rescaled;
+        }
+
+        //Новая запись добавляется раньше, чем удаляется старая: читатель без блокировки не упустит фильм
+        private void put(int filmId, double value) {
+            modCount++;
+            try {
+                Double old = values.get(filmId);
+                if (value > EPSILON) {
+                    values.put(filmId, value);
+                    ranking.add(new Entry(value, filmId));
+                } else {
+                    values.remove(filmId);
+                }
+                if (old != null && (value <= EPSILON || old != value)) {
+                    ranking.remove(new Entry(old, filmId));
+                }
+            } finally {
+                modCount++;
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final double score;
+        private final int filmId;
+
+        private Entry(double score, int filmId) {
+            this.score = score;
+            this.filmId = filmId;
+        }
+
+        private double getScore() {
+            return score;
+        }
+
+        private int getFilmId() {
+            return filmId;
+        }
+    }
+}
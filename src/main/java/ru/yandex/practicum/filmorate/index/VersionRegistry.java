@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Версии данных для условных GET-запросов (ETag / If-None-Match).
+//Все версии берутся из одного счетчика, поэтому каждое изменение дает значение, которое еще не выдавалось.
+//В тег входит время старта приложения - после перезапуска счетчик начинается с нуля, а старые теги не совпадут.
+//Версии поднимают сервисы после записи в БД: тег читается до загрузки данных, поэтому устаревший тег
+//может привести только к лишнему ответу 200, но не к ошибочному 304
+@Component
+public class VersionRegistry {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong clock = new AtomicLong();
+
+    //Версии отдельных записей. Удаленная запись получает новую версию, а не пропадает из словаря,
+    //иначе ее тег вернулся бы к начальному и совпал с выданным до изменений
+    private final Map<Integer, Long> films = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> friends = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> reviews = new ConcurrentHashMap<>();
+
+    //Версии коллекций: любой фильм или лайк (порядок популярных), режиссёры (входят в фильмы и каталог),
+    //пользователи (входят в списки друзей), отзывы при каскадном удалении
+    private volatile long filmsVersion;
+    private volatile long directorsVersion;
+    private volatile long usersVersion;
+    private volatile long reviewsVersion;
+
+    public void filmChanged(int id) {
+        long version = clock.incrementAndGet();
+        films.put(id, version);
+        filmsVersion = version;
+    }
+
+    public void likesChanged() {
+        filmsVersion = clock.incrementAndGet();
+    }
+
+    public void directorsChanged() {
+        directorsVersion = clock.incrementAndGet();
+    }
+
+    public void friendsChanged(int userId) {
+        friends.put(userId, clock.incrementAndGet());
+    }
+
+    public void usersChanged() {
+        usersVersion = clock.incrementAndGet();
+    }
+
+    public void reviewChanged(int id) {
+        reviews.put(id, clock.incrementAndGet());
+    }
+
+    public void reviewsChanged() {
+        reviewsVersion = clock.incrementAndGet();
+    }
+
+    public String filmTag(int id) {
+        return tag(films.getOrDefault(id, 0L), directorsVersion);
+    }
+
+    public String popularTag() {
+        return tag(filmsVersion, directorsVersion);
+    }
+
+    public String friendsTag(int userId) {
+        return tag(friends.getOrDefault(userId, 0L), usersVersion);
+    }
+
+    public String directorsTag() {
+        return tag(directorsVersion, 0);
+    }
+
+    public String reviewTag(int id) {
+        return tag(reviews.getOrDefault(id, 0L), reviewsVersion);
+    }
+
+    //Сильный тег в кавычках, как требует заголовок ETag
+    private String tag(long entity, long collection) {
+        return '"' + epoch + '-' + Long.toString(entity, Character.MAX_RADIX)
+                + '-' + Long.toString(collection, Character.MAX_RADIX) + '"';
+    }
+}
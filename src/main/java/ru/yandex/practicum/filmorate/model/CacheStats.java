@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+//Счетчики кэша: попадания, промахи, вытеснения, текущее число записей и их примерный объем в байтах
+@Getter
+@AllArgsConstructor
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final long weight;
+}
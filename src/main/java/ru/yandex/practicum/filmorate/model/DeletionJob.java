@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+
+import java.time.Instant;
+
+//Задача массового удаления пользователей и ход ее выполнения.
+//Меняет ее только поток удаления, поля volatile - чтобы запрос прогресса видел свежие значения
+@Getter
+public class DeletionJob {
+
+    private final int jobId;
+    private final int total;
+    private final Instant createdAt = Instant.now();
+    private volatile DeletionJobStatus status = DeletionJobStatus.QUEUED;
+    private volatile int processed;
+    private volatile int deleted;
+    private volatile int notFound;
+    private volatile int failed;
+    private volatile Instant finishedAt;
+
+    public DeletionJob(int jobId, int total) {
+        this.jobId = jobId;
+        this.total = total;
+    }
+
+    public void start() {
+        status = DeletionJobStatus.RUNNING;
+    }
+
+    public void chunkDone(int chunkSize, int chunkDeleted, int chunkNotFound, int chunkFailed) {
+        deleted += chunkDeleted;
+        notFound += chunkNotFound;
+        failed += chunkFailed;
+        processed += chunkSize;
+    }
+
+    //Статус пишется раньше времени завершения: кто увидел finishedAt, увидит и итоговый статус
+    public void finish(DeletionJobStatus finalStatus) {
+        status = finalStatus;
+        finishedAt = Instant.now();
+    }
+}
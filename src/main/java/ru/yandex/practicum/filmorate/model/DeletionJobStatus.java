@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.model;
+
+//Состояние задачи массового удаления пользователей
+public enum DeletionJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    //Задача остановлена при выключении приложения - удалена только часть пользователей
+    INTERRUPTED,
+    //Задача прервана ошибкой (например, недоступна БД) - удалена только часть пользователей
+    FAILED
+}
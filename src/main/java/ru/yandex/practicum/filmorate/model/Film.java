@@ -1,7 +1,8 @@
 package ru.yandex.practicum.filmorate.model;
 
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -15,11 +16,16 @@ import java.util.LinkedHashSet;
 @Getter
 @Setter
 @NoArgsConstructor
+@JsonFilter(Film.FILTER)
 public class Film {
 
+    //Какие поля попадут в JSON, решает фильтр: по умолчанию все, кроме likes (см. JacksonConfig)
+    public static final String FILTER = "filmFields";
+
     private Integer id;
 
-    @JsonIgnore
+    //Из запроса не читается, в ответ выдается только по явному fields=likes
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
     private Integer likes;
 
     @NotBlank(message = "Название фильма не может быть пустым")
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+//Позиция последнего выданного фильма в отсортированном списке: значение ключа сортировки и id.
+//Клиенту отдается в закодированном виде, следующая страница начинается строго после этой позиции
+@Getter
+@AllArgsConstructor
+public class FilmCursor {
+
+    //Ключ сортировки: количество лайков или дата выхода (номер дня от 1970-01-01)
+    private final long key;
+    private final int filmId;
+}
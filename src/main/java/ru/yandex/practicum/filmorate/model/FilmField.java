@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+
+//Поля фильма, которые можно запросить параметром fields, property - имя поля в JSON
+@Getter
+@RequiredArgsConstructor
+public enum FilmField {
+    ID("id"),
+    NAME("name"),
+    DESCRIPTION("description"),
+    RELEASE_DATE("releaseDate"),
+    DURATION("duration"),
+    MPA("mpa"),
+    GENRES("genres"),
+    DIRECTORS("directors"),
+    LIKES("likes");
+
+    //Поля ответа без параметра fields - лайки в нем не выдаются
+    public static final Set<FilmField> DEFAULT = Collections.unmodifiableSet(EnumSet.complementOf(EnumSet.of(LIKES)));
+
+    private final String property;
+
+    public static Optional<FilmField> ofProperty(String property) {
+        return Arrays.stream(values())
+                .filter(field -> field.property.equalsIgnoreCase(property))
+                .findFirst();
+    }
+}
@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Objects;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilmLike {
+
+    private Integer filmId;
+    private Integer userId;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FilmLike like = (FilmLike) o;
+        return Objects.equals(filmId, like.filmId) && Objects.equals(userId, like.userId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(filmId, userId);
+    }
+}
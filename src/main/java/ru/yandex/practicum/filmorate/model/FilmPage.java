@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+//Страница списка фильмов. nextCursor == null - это последняя страница
+@Getter
+@AllArgsConstructor
+public class FilmPage {
+
+    private final List<Film> films;
+    private final String nextCursor;
+}
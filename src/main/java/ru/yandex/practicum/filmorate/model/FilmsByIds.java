@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+//Ответ на запрос фильмов по списку id: найденные фильмы в порядке запроса и id, для которых фильма нет
+@Getter
+@AllArgsConstructor
+public class FilmsByIds {
+
+    private final List<Film> films;
+    private final List<Integer> missing;
+}
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+//Кратчайшая цепочка дружбы между двумя пользователями.
+//users пустой и degrees == null - цепочки не нашлось; interrupted - поиск остановлен по времени, и ответ неизвестен
+@Getter
+@AllArgsConstructor
+public class FriendPath {
+
+    private final List<User> users;
+    private final Integer degrees;
+    private final boolean interrupted;
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+//Возможный знакомый: друг друзей пользователя и число общих с ним друзей
+@Getter
+@AllArgsConstructor
+public class FriendSuggestion {
+
+    private final User user;
+    private final int mutualFriends;
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+//Друг из списка друзей и число его общих друзей с тем, кто смотрит список
+@Getter
+@AllArgsConstructor
+public class FriendWithMutual {
+
+    private final User user;
+    private final int mutualFriends;
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+//Итог пакетной загрузки лайков: что добавлено, что уже было и для чего не нашлось фильма или пользователя
+@Getter
+@AllArgsConstructor
+public class LikesBatchResult {
+
+    private final int added;
+    private final List<FilmLike> duplicates;
+    private final List<FilmLike> notFound;
+}
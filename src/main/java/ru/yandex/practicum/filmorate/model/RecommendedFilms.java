@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+//Рекомендованные фильмы и момент (мс с эпохи), на который они посчитаны
+@Getter
+@AllArgsConstructor
+public class RecommendedFilms {
+
+    private final List<Film> films;
+    private final Long computedAt;
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+//Подсказка при наборе поискового запроса: фильм или режиссёр.
+//likes - лайки фильма или сумма лайков всех фильмов режиссёра, по ним подсказки упорядочены
+@Getter
+@AllArgsConstructor
+public class Suggestion {
+
+    private final SuggestionType type;
+    private final Integer id;
+    private final String name;
+    private final Integer likes;
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+
+//Горизонт "трендовости": вес лайка уменьшается в e раз за каждый такой промежуток
+@Getter
+@RequiredArgsConstructor
+public enum TrendingPeriod {
+    HOUR(Duration.ofHours(1)),
+    DAY(Duration.ofDays(1)),
+    WEEK(Duration.ofDays(7)),
+    MONTH(Duration.ofDays(30));
+
+    private final Duration duration;
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+//Страница списка пользователей. nextCursor == null - это последняя страница
+@Getter
+@AllArgsConstructor
+public class UserPage {
+
+    private final List<User> users;
+    private final String nextCursor;
+}
@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.index.VersionRegistry;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
@@ -15,6 +16,7 @@ import java.util.List;
 public class DirectorService {
 
     private final DirectorStorage directorStorage;
+    private final VersionRegistry versions;
 
     public Director getDirector(Integer id) {
         log.debug(String.format("Получение режиссёра c id = %d", id));
@@ -23,13 +25,20 @@ public class DirectorService {
 
     public Director addDirector(Director director) {
         log.debug("Добавление режиссёра");
-        return directorStorage.createDirector(director);
+        Director saveDirector = directorStorage.createDirector(director);
+        //Новый режиссёр меняет только каталог, но отдельной версии для него не заводим:
+        //добавления редки, а фильмы после него лишь один раз отдадутся с телом вместо 304
+        versions.directorsChanged();
+        return saveDirector;
     }
 
     public Director updateDirector(Director director) {
         Integer id = director.getId();
         log.debug(String.format("Обновление режиссёра c id = %d", id));
-        return directorStorage.updateDirector(director);
+        Director saveDirector = directorStorage.updateDirector(director);
+        //Режиссёры входят в ответ фильма - меняются теги всех фильмов
+        versions.directorsChanged();
+        return saveDirector;
     }
 
     public void setFilmDirector(Film film) {
@@ -40,6 +49,12 @@ public class DirectorService {
     public void removeDirector(Integer id) {
         log.debug(String.format("Удаление режиссёра c id = %d", id));
         directorStorage.removeDirector(id);
+        versions.directorsChanged();
+    }
+
+    //Версия каталога режиссёров - для кэша готового ответа
+    public String getDirectorsTag() {
+        return versions.directorsTag();
     }
 
     public List<Director> getDirectors() {
@@ -47,21 +62,6 @@ public class DirectorService {
         return directorStorage.getAllDirectors();
     }
 
-    public Film loadFilmDirector(Film film) {
-        log.debug("Загрузка режиссёров для фильма");
-        return directorStorage.loadFilmDirector(film);
-    }
-
-    public List<Film> loadFilmsDirector(List<Film> films) {
-        log.debug("Загрузка режиссёров для нескольких фильмов");
-
-        //Если фильмов нет, то и загрузка режиссёров не нужна
-        if (films.isEmpty()) {
-            return films;
-        }
-        return directorStorage.loadFilmsDirector(films);
-    }
-
     public void isContains(Integer id) {
         directorStorage.isContains(id);
     }
@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dao.FeedDbStorage;
 import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 
 import java.util.List;
 
@@ -35,6 +36,14 @@ public class FeedService {
         feedDbStorage.addLike(filmId, userId);
     }
 
+    public void saveEventsAddLikeFilm(List<FilmLike> likes) {
+        log.debug(String.format("Сохранение событий - поставил лайк - для %d лайков", likes.size()));
+        if (likes.isEmpty()) {
+            return;
+        }
+        feedDbStorage.addLikes(likes);
+    }
+
     public void saveEventRemoveLikeFilm(Integer filmId, Integer userId) {
         log.debug(String.format("Сохранение события - удалить лайк - для пользоватесля с id = %d", userId));
         feedDbStorage.removeLike(filmId, userId);
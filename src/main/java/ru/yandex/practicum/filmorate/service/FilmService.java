@@ -3,14 +3,31 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
 import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
+import ru.yandex.practicum.filmorate.index.AfterCommit;
+import ru.yandex.practicum.filmorate.index.VersionRegistry;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmCursor;
+import ru.yandex.practicum.filmorate.model.FilmField;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmPage;
+import ru.yandex.practicum.filmorate.model.FilmsByIds;
+import ru.yandex.practicum.filmorate.model.LikesBatchResult;
+import ru.yandex.practicum.filmorate.model.RecommendedFilms;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -22,11 +39,35 @@ public class FilmService {
     private final GenreService genreService;
     private final DirectorService directorService;
     private final FeedService feedService;
+    private final VersionRegistry versions;
+
+    //Ограничение на размер одного пакета лайков
+    private static final int MAX_LIKES_BATCH = 10_000;
+    //Ограничение на число подсказок при наборе
+    private static final int MAX_SUGGESTIONS = 50;
+    //Ограничение на число id в одном запросе фильмов по списку
+    private static final int MAX_FILMS_BY_IDS = 1000;
+    //Ограничение на размер одной страницы фильмов
+    private static final int MAX_PAGE_SIZE = 1000;
+    //Ограничение на число трендовых фильмов в одном ответе
+    private static final int MAX_TRENDING = 1000;
 
     public Film getFilm(Integer id) {
         log.debug(String.format("Выдача фильма с id = %d", id));
-        Film film = genreService.loadFilmGenre(filmStorage.get(id));
-        return directorService.loadFilmDirector(film);
+        //Хранилище отдает фильм сразу с жанрами и режиссёрами
+        return filmStorage.get(id);
+    }
+
+    //Теги для условных запросов считаются по счетчикам в памяти, до обращения к БД.
+    //Несуществующему фильму тег не выдаем - проверка наличия тоже идет по индексу в памяти
+    public String getFilmTag(Integer id) {
+        isFilmContains(id);
+        return versions.filmTag(id);
+    }
+
+    //Один тег на все варианты списка: параметры входят в URL, а кэш клиента хранит ответы по URL
+    public String getPopularTag() {
+        return versions.popularTag();
     }
 
     public Film addFilm(Film film) {
@@ -38,6 +79,7 @@ public class FilmService {
         Film saveFilm = filmStorage.add(film);
         genreService.setFilmGenre(saveFilm);
         directorService.setFilmDirector(saveFilm);
+        versions.filmChanged(saveFilm.getId());
         return saveFilm;
     }
 
@@ -47,6 +89,7 @@ public class FilmService {
         Film updateFilm = filmStorage.update(film);
         genreService.setFilmGenre(updateFilm);
         directorService.setFilmDirector(updateFilm);
+        versions.filmChanged(updateFilm.getId());
         return updateFilm;
     }
 
@@ -65,12 +108,47 @@ public class FilmService {
     public void removeFilm(Integer id) {
         log.debug(String.format("Удаляем фильм с id =%d", id));
         filmStorage.remove(id);
+        versions.filmChanged(id);
+        //Отзывы к фильму удаляются каскадно
+        versions.reviewsChanged();
+    }
+
+    public void forEachFilm(Consumer<Film> consumer) {
+        log.debug("Выдача всех фильмов потоком");
+        filmStorage.forEachFilm(consumer);
+    }
+
+    //Страницы по возрастанию id, курсор - id последнего выданного фильма
+    public FilmPage getFilmPage(Integer limit, String cursor) {
+        log.debug("Выдача страницы фильмов");
+        checkPageSize("limit", limit);
+        FilmCursor after = decodeCursor(cursor);
+        List<Film> films = filmStorage.getFilmPage(limit, after == null ? null : after.getFilmId());
+        return makePage(films, limit, Film::getId);
     }
 
-    public List<Film> getFilms() {
-        log.debug("Выдача списка всех фильмов");
-        List<Film> films = genreService.loadFilmsGenre(filmStorage.getAll());
-        return directorService.loadFilmsDirector(films);
+    //Фильмы по списку id одним запросом и одной пакетной загрузкой связей.
+    //Повторы в списке отбрасываются, порядок первых вхождений сохраняется.
+    //Ненайденные id не прерывают запрос, а возвращаются в missing
+    public FilmsByIds getFilmsByIds(List<Integer> ids) {
+        log.debug(String.format("Выдача %d фильмов по списку id", ids.size()));
+        if (ids.isEmpty() || ids.size() > MAX_FILMS_BY_IDS) {
+            throw new IncorrectParameterException(
+                    String.format("Число id в запросе должно быть от 1 до %d", MAX_FILMS_BY_IDS));
+        }
+        if (ids.contains(null)) {
+            throw new IncorrectParameterException("Список id фильмов не должен содержать пустых значений");
+        }
+
+        List<Integer> requested = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<Film> films = filmStorage.getFilmsByIds(requested);
+        Set<Integer> found = films.stream()
+                .map(Film::getId)
+                .collect(Collectors.toSet());
+        List<Integer> missing = requested.stream()
+                .filter(id -> !found.contains(id))
+                .collect(Collectors.toList());
+        return new FilmsByIds(films, missing);
     }
 
     public void addLike(Integer id, Integer idUser) {
@@ -79,6 +157,7 @@ public class FilmService {
         userService.isContainsUser(idUser);
         feedService.saveEventAddLikeFilm(id, idUser);
         filmStorage.addLike(id, idUser);
+        versions.likesChanged();
     }
 
     public void removeLike(Integer id, Integer idUser) {
@@ -86,16 +165,72 @@ public class FilmService {
         isFilmContains(id);
         userService.isContainsUser(idUser);
         filmStorage.removeLike(id, idUser);
+        versions.likesChanged();
         feedService.saveEventRemoveLikeFilm(id, idUser);
     }
 
-    public List<Film> getPopularFilm(Integer count, Integer genreId, Integer year) {
+    //Лайки и события ленты о них пишутся одной транзакцией
+    @Transactional
+    public LikesBatchResult addLikes(List<FilmLike> likes) {
+        log.debug(String.format("Пакетное добавление %d лайков", likes.size()));
+        if (likes.isEmpty() || likes.size() > MAX_LIKES_BATCH) {
+            throw new IncorrectParameterException(
+                    String.format("Размер пакета лайков должен быть от 1 до %d", MAX_LIKES_BATCH));
+        }
+        for (FilmLike like : likes) {
+            if (like == null || like.getFilmId() == null || like.getUserId() == null) {
+                throw new IncorrectParameterException("В пакете лайков должны быть заполнены filmId и userId");
+            }
+        }
+
+        //Наличие фильмов и пользователей проверяем двумя запросами на весь пакет
+        Set<Integer> films = filmStorage.getExistingIds(
+                likes.stream().map(FilmLike::getFilmId).collect(Collectors.toSet()));
+        Set<Integer> users = userService.getExistingUsers(
+                likes.stream().map(FilmLike::getUserId).collect(Collectors.toSet()));
+
+        List<FilmLike> notFound = new ArrayList<>();
+        List<FilmLike> candidates = new ArrayList<>();
+        for (FilmLike like : likes) {
+            if (films.contains(like.getFilmId()) && users.contains(like.getUserId())) {
+                candidates.add(like);
+            } else {
+                notFound.add(like);
+            }
+        }
+
+        List<FilmLike> added = candidates.isEmpty() ? new ArrayList<>() : filmStorage.addLikes(candidates);
+        feedService.saveEventsAddLikeFilm(added);
+        if (!added.isEmpty()) {
+            //Версия меняется вместе с индексами - иначе новый тег мог бы достаться еще старому топу
+            AfterCommit.run(versions::likesChanged);
+        }
+
+        //Все, что прошло проверку, но не было добавлено - повторные лайки
+        List<FilmLike> duplicates = new ArrayList<>(candidates);
+        Set<FilmLike> addedSet = new HashSet<>(added);
+        duplicates.removeIf(addedSet::remove);
+
+        return new LikesBatchResult(added.size(), duplicates, notFound);
+    }
+
+    //Поля фильма из параметра fields ("id,name,likes"), без параметра - поля обычного ответа
+    public Set<FilmField> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return FilmField.DEFAULT;
+        }
+        Set<FilmField> parsed = EnumSet.noneOf(FilmField.class);
+        for (String property : fields.split(",")) {
+            parsed.add(FilmField.ofProperty(property.trim()).orElseThrow(() -> new IncorrectParameterException(
+                    String.format("Неизвестное поле фильма: %s", property.trim()))));
+        }
+        return parsed;
+    }
+
+    public List<Film> getPopularFilm(Integer count, Integer genreId, Integer year, Set<FilmField> fields) {
         String genreName;
-        if (count <= 0) {
-            throw new IncorrectParameterException("Значение параметра count должно быть больше нуля");
-        } else if (genreId != null && (genreId <= 0 || genreId >= 7)) {
-            throw new IncorrectParameterException("Значение параметра genreId должно быть от 1 до 6");
-        } else if (year != null && genreId != null) {
+        checkPopularParams(count, genreId);
+        if (year != null && genreId != null) {
             genreName = genreService.getGenre(genreId).getName();
             log.debug(String.format("Выдача списка %d популярных фильмов в жанре %s %d года", count, genreName, year));
         } else if (year == null && genreId != null) {
@@ -106,24 +241,108 @@ public class FilmService {
         } else {
             log.debug(String.format("Выдача списка %d популярных фильмов", count));
         }
-        return genreService.loadFilmsGenre(filmStorage.getPopularFilm(count, genreId, year));
+        return filmStorage.getPopularFilm(count, genreId, year, fields);
+    }
+
+    public FilmPage getPopularFilmPage(Integer size, Integer genreId, Integer year, String cursor) {
+        log.debug(String.format("Выдача страницы из %d популярных фильмов", size));
+        checkPageSize("size", size);
+        checkPopularParams(size, genreId);
+        FilmCursor after = decodeCursor(cursor);
+        List<Film> films = filmStorage.getPopularFilmPage(size, genreId, year, after);
+        return makePage(films, size, Film::getLikes);
+    }
+
+    private void checkPageSize(String parameter, Integer size) {
+        if (size <= 0 || size > MAX_PAGE_SIZE) {
+            throw new IncorrectParameterException(
+                    String.format("Значение параметра %s должно быть от 1 до %d", parameter, MAX_PAGE_SIZE));
+        }
     }
 
-    public List<Film> getDirectorFilm(int directorId, String sortBy) {
+    //Вызывается и контроллером до проверки тега: неверные параметры дают 400, а не 304
+    public void checkPopularParams(Integer count, Integer genreId) {
+        if (count <= 0) {
+            throw new IncorrectParameterException("Значение параметра count должно быть больше нуля");
+        } else if (genreId != null && !genreService.isExists(genreId)) {
+            //Проверка по справочнику жанров, а не по зашитому диапазону id
+            throw new IncorrectParameterException(String.format("Жанр с id = %d не существует", genreId));
+        }
+    }
+
+    public List<Film> getTrendingFilm(Integer count, String period) {
+        if (count <= 0 || count > MAX_TRENDING) {
+            throw new IncorrectParameterException(
+                    String.format("Значение параметра count должно быть от 1 до %d", MAX_TRENDING));
+        }
+        TrendingPeriod trendingPeriod;
+        try {
+            trendingPeriod = TrendingPeriod.valueOf(period.toUpperCase());
+        } catch (IllegalArgumentException exp) {
+            throw new IncorrectParameterException(
+                    "Значение параметра period должно быть \"hour\", \"day\", \"week\" или \"month\"");
+        }
+        log.debug(String.format("Выдача списка %d трендовых фильмов за период %s", count, trendingPeriod));
+        return filmStorage.getTrendingFilm(count, trendingPeriod);
+    }
+
+    public List<Film> getDirectorFilm(int directorId, String sortBy, Set<FilmField> fields) {
         if (!(sortBy.equals("year".toLowerCase()) || sortBy.equals("likes".toLowerCase()))) {
             throw new IncorrectParameterException("Значение параметра sortBy должно быть \"year\" или \"likes\"");
         }
         isDirectorContains(directorId);
 
         log.debug(String.format("Выдача списка фильмов режиссёра %d отсортированных по критерию %s", directorId, sortBy));
-        List<Film> films = genreService.loadFilmsGenre(filmStorage.getFilmsByDirector(directorId, sortBy.toLowerCase()));
-        films = directorService.loadFilmsDirector(films);
+        List<Film> films = filmStorage.getFilmsByDirector(directorId, sortBy.toLowerCase(), fields);
         if (films.size() == 0) {
             throw new EntityNotFoundException("Фильмов от этого режиссёра не найдено.");
         }
         return films;
     }
 
+    public FilmPage getDirectorFilmPage(int directorId, String sortBy, Integer size, String cursor) {
+        if (!(sortBy.equals("year") || sortBy.equals("likes"))) {
+            throw new IncorrectParameterException("Значение параметра sortBy должно быть \"year\" или \"likes\"");
+        }
+        checkPageSize("size", size);
+        isDirectorContains(directorId);
+
+        log.debug(String.format("Выдача страницы фильмов режиссёра %d отсортированных по критерию %s",
+                directorId, sortBy));
+        FilmCursor after = decodeCursor(cursor);
+        List<Film> films = filmStorage.getFilmsByDirectorPage(directorId, sortBy, size, after);
+        if (films.isEmpty() && after == null) {
+            throw new EntityNotFoundException("Фильмов от этого режиссёра не найдено.");
+        }
+        if (sortBy.equals("year")) {
+            return makePage(films, size, film -> film.getReleaseDate().toEpochDay());
+        }
+        return makePage(films, size, Film::getLikes);
+    }
+
+    //Неполная страница - значит, дальше фильмов нет и курсор не нужен
+    private FilmPage makePage(List<Film> films, int size, ToLongFunction<Film> sortKey) {
+        if (films.size() < size) {
+            return new FilmPage(films, null);
+        }
+        Film last = films.get(films.size() - 1);
+        String cursor = last.getId() + ":" + sortKey.applyAsLong(last);
+        return new FilmPage(films,
+                Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private FilmCursor decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            return new FilmCursor(Long.parseLong(parts[1]), Integer.parseInt(parts[0]));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException exp) {
+            throw new IncorrectParameterException("Неверно передан курсор");
+        }
+    }
+
     public void isFilmContains(Integer id) {
         filmStorage.isContains(id);
     }
@@ -132,30 +351,51 @@ public class FilmService {
         directorService.isContains(id);
     }
 
-    public List<Film> getUserRecommendations(Integer id) {
-        log.debug(String.format("Выдача рекомендованных фильмов для пользователя %d", id));
+    public RecommendedFilms getUserRecommendations(Integer id, Integer count) {
+        if (count <= 0) {
+            throw new IncorrectParameterException("Значение параметра count должно быть больше нуля");
+        }
+        log.debug(String.format("Выдача %d рекомендованных фильмов для пользователя %d", count, id));
         userService.isContainsUser(id);
-        return giveFilmsGenresAndDirector(filmStorage.getUserRecommendations(id));
+        return filmStorage.getMaterializedRecommendations(id, count);
     }
 
     public List<Film> getCommonFilms(Integer userId, Integer friendId) {
         log.debug(String.format("Выдача списка общих фильмов у пользователей с id %d и %d", userId, friendId));
         userService.isContainsUser(userId);
         userService.isContainsUser(friendId);
-        return giveFilmsGenresAndDirector(filmStorage.getCommonFilms(userId, friendId));
+        return filmStorage.getCommonFilms(userId, friendId);
     }
 
-    public List<Film> getSearchedFilms(String query, String by) {
+    public List<Film> getSearchedFilms(String query, String by, Set<FilmField> fields) {
         log.debug(String.format("Выдача списка фильмов с поиском %s по %s", query, by));
         if (by.equals("title,director") || by.equals("director")
                 || by.equals("title") || by.equals("director,title")) {
-            return giveFilmsGenresAndDirector(new ArrayList<>(filmStorage.getSearchedFilms(query, by)));
+            return filmStorage.getSearchedFilms(query, by, fields);
         } else {
             throw new IncorrectParameterException("Неверно введены параметры поиска");
         }
     }
 
-    private List<Film> giveFilmsGenresAndDirector(List<Film> films) {
-        return directorService.loadFilmsDirector(genreService.loadFilmsGenre(films));
+    public CacheStats getCacheStats() {
+        log.debug("Выдача счетчиков кэша фильмов");
+        return filmStorage.getCacheStats();
+    }
+
+    public List<Suggestion> getSuggestions(String query, String by, Integer count) {
+        if (count <= 0 || count > MAX_SUGGESTIONS) {
+            throw new IncorrectParameterException(
+                    String.format("Значение параметра count должно быть от 1 до %d", MAX_SUGGESTIONS));
+        }
+        if (!(by.equals("title,director") || by.equals("director")
+                || by.equals("title") || by.equals("director,title"))) {
+            throw new IncorrectParameterException("Неверно введены параметры поиска");
+        }
+        //Пустая строка - начало любого ключа: вместо обхода всего индекса на первом нажатии отвечаем пустым списком
+        if (query.isBlank()) {
+            return List.of();
+        }
+        log.debug(String.format("Выдача подсказок для %s по %s", query, by));
+        return filmStorage.getSuggestions(query, by, count);
     }
 }
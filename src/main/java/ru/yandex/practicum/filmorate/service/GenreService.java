@@ -21,6 +21,10 @@ public class GenreService {
         return genreDbStorage.getGenre(id);
     }
 
+    public boolean isExists(Integer id) {
+        return genreDbStorage.isExists(id);
+    }
+
     public List<Genre> getAllGenre() {
         log.debug("Выдача всех Genre");
         return genreDbStorage.getAllGenre();
@@ -30,19 +34,4 @@ public class GenreService {
         log.debug("Сохранение жанров фильма");
         genreDbStorage.setFilmGenre(film);
     }
-
-    public Film loadFilmGenre(Film film) {
-        log.debug("Загрузка жанров для фильма");
-        return genreDbStorage.loadFilmGenre(film);
-    }
-
-    public List<Film> loadFilmsGenre(List<Film> films) {
-        log.debug("Загрузка жанров для нескольких фильмов");
-
-        //Если фильмов нет, то и загрузка жанров не нужна
-        if (films.isEmpty()) {
-            return films;
-        }
-        return genreDbStorage.loadFilmsGenre(films);
-    }
 }
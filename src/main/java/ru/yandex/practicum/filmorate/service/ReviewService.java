@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
+import ru.yandex.practicum.filmorate.index.VersionRegistry;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.storage.ReviewStorage;
 
@@ -18,12 +19,14 @@ public class ReviewService {
     private final FilmService filmService;
     private final UserService userService;
     private final FeedService feedService;
+    private final VersionRegistry versions;
 
     public Review addReview(Review review) {
         log.debug("Сохранение отзыва");
         filmService.isFilmContains(review.getFilmId());
         userService.isContainsUser(review.getUserId());
         Review saveReview = reviewStorage.add(review);
+        versions.reviewChanged(saveReview.getReviewId());
         feedService.saveEventAddReview(saveReview.getReviewId(), saveReview.getUserId());
         return saveReview;
     }
@@ -31,10 +34,17 @@ public class ReviewService {
     public Review updateReview(Review review) {
         log.debug(String.format("Обновление отзыва с id = %d", review.getReviewId()));
         Review saveReview = reviewStorage.update(review);
+        versions.reviewChanged(saveReview.getReviewId());
         feedService.saveEventUpdateReview(saveReview.getReviewId(), saveReview.getUserId());
         return saveReview;
     }
 
+    //Тег отзыва считается по счетчикам в памяти, до обращения к БД
+    public String getReviewTag(Integer id) {
+        isReviewContains(id);
+        return versions.reviewTag(id);
+    }
+
     public Review getReview(Integer id) {
         log.debug(String.format("Выдача отзыва с id = %d", id));
         return reviewStorage.get(id);
@@ -43,6 +53,7 @@ public class ReviewService {
     public void removeReview(Integer id) {
         log.debug(String.format("Удаляем отзыв с id = %d", id));
         Integer userId = reviewStorage.remove(id);
+        versions.reviewChanged(id);
         feedService.saveEventRemoveReview(id, userId);
     }
 
@@ -81,6 +92,7 @@ public class ReviewService {
         isReviewContains(id);
         userService.isContainsUser(userId);
         reviewStorage.addLike(id, userId);
+        versions.reviewChanged(id);
 
     }
 
@@ -89,6 +101,7 @@ public class ReviewService {
         isReviewContains(id);
         userService.isContainsUser(userId);
         reviewStorage.addDislike(id, userId);
+        versions.reviewChanged(id);
     }
 
     public void removeLike(Integer id, Integer userId) {
@@ -96,6 +109,7 @@ public class ReviewService {
         isReviewContains(id);
         userService.isContainsUser(userId);
         reviewStorage.removeLike(id, userId);
+        versions.reviewChanged(id);
     }
 
     public void removeDislike(Integer id, Integer userId) {
@@ -103,6 +117,7 @@ public class ReviewService {
         isReviewContains(id);
         userService.isContainsUser(userId);
         reviewStorage.removeDislike(id, userId);
+        versions.reviewChanged(id);
     }
 
     public void isReviewContains(Integer id) {
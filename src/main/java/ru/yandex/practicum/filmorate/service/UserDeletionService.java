@@ -0,0 +1,146 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
+import ru.yandex.practicum.filmorate.model.DeletionJob;
+import ru.yandex.practicum.filmorate.model.DeletionJobStatus;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Массовое удаление пользователей в фоне. Задачи выполняются по очереди в одном потоке,
+//пользователи обрабатываются пачками: на каждую пачку один запрос наличия, каждый пользователь
+//удаляется своей короткой транзакцией (UserDbStorage.remove), между пачками - пауза,
+//чтобы удаление не держало блокировки таблиц подолгу и не вытесняло обычные запросы.
+//После каждой пачки обновляется прогресс задачи
+@Slf4j
+@Service
+public class UserDeletionService {
+
+    //Ограничение на число пользователей в одной задаче
+    private static final int MAX_USERS_PER_JOB = 100_000;
+    //Сколько хранятся завершенные задачи
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofDays(1);
+
+    private final UserService userService;
+    private final int chunkSize;
+    private final long pause;
+    private final ExecutorService executor;
+    private final Map<Integer, DeletionJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger jobIds = new AtomicInteger();
+
+    public UserDeletionService(UserService userService,
+                               @Value("${filmorate.users.deletion-chunk-size:100}") int chunkSize,
+                               @Value("${filmorate.users.deletion-pause:50}") long pause) {
+        this.userService = userService;
+        this.chunkSize = chunkSize;
+        this.pause = pause;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public DeletionJob startJob(List<Integer> userIds) {
+        if (userIds.isEmpty() || userIds.size() > MAX_USERS_PER_JOB) {
+            throw new IncorrectParameterException(
+                    String.format("Число пользователей в задаче должно быть от 1 до %d", MAX_USERS_PER_JOB));
+        }
+        //Не contains(null): неизменяемые списки на такой вызов бросают NullPointerException
+        if (userIds.stream().anyMatch(Objects::isNull)) {
+            throw new IncorrectParameterException("Список id пользователей не должен содержать пустых значений");
+        }
+        removeFinishedJobs();
+
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(userIds));
+        DeletionJob job = new DeletionJob(jobIds.incrementAndGet(), ids.size());
+        jobs.put(job.getJobId(), job);
+        log.debug(String.format("Задача удаления %d поставлена в очередь, пользователей: %d",
+                job.getJobId(), ids.size()));
+        executor.execute(() -> run(job, ids));
+        return job;
+    }
+
+    public DeletionJob getJob(Integer jobId) {
+        DeletionJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new EntityNotFoundException(String.format("Задача удаления с id = %d не найдена", jobId));
+        }
+        return job;
+    }
+
+    //Ошибка вне удаления отдельного пользователя (например, при проверке наличия пачки)
+    //завершает задачу со статусом FAILED, иначе она навсегда осталась бы RUNNING
+    private void run(DeletionJob job, List<Integer> ids) {
+        job.start();
+        try {
+            for (int from = 0; from < ids.size(); from += chunkSize) {
+                List<Integer> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+                runChunk(job, chunk);
+
+                if (from + chunkSize < ids.size()) {
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(pause);
+                    } catch (InterruptedException exp) {
+                        Thread.currentThread().interrupt();
+                        job.finish(DeletionJobStatus.INTERRUPTED);
+                        return;
+                    }
+                }
+            }
+        } catch (RuntimeException exp) {
+            log.error("Задача удаления {} прервана ошибкой: {}", job.getJobId(), exp.getMessage());
+            job.finish(DeletionJobStatus.FAILED);
+            return;
+        }
+        job.finish(DeletionJobStatus.COMPLETED);
+    }
+
+    private void runChunk(DeletionJob job, List<Integer> chunk) {
+        Set<Integer> existing = userService.getExistingUsers(chunk);
+        int deleted = 0;
+        int failed = 0;
+        for (Integer id : chunk) {
+            if (!existing.contains(id)) {
+                continue;
+            }
+            try {
+                userService.removeUser(id);
+                deleted++;
+            } catch (RuntimeException exp) {
+                //Транзакция этого пользователя откатилась - остальных удаляем дальше
+                log.error("Не удалось удалить пользователя {}: {}", id, exp.getMessage());
+                failed++;
+            }
+        }
+        job.chunkDone(chunk.size(), deleted, chunk.size() - existing.size(), failed);
+        log.debug(String.format("Задача удаления %d: обработано %d из %d",
+                job.getJobId(), job.getProcessed(), job.getTotal()));
+    }
+
+    private void removeFinishedJobs() {
+        Instant expired = Instant.now().minus(FINISHED_JOB_RETENTION);
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(expired));
+    }
+}
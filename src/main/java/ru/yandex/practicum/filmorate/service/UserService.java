@@ -3,11 +3,22 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
+import ru.yandex.practicum.filmorate.index.VersionRegistry;
 import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.FriendPath;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.FriendWithMutual;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserPage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -16,6 +27,12 @@ public class UserService {
 
     private final UserStorage userStorage;
     private final FeedService feedService;
+    private final VersionRegistry versions;
+
+    //Ограничение на число возможных знакомых в одном ответе
+    private static final int MAX_SUGGESTIONS = 50;
+    //Ограничение на размер одной страницы пользователей
+    private static final int MAX_PAGE_SIZE = 1000;
 
     public User getUser(Integer id) {
         log.debug(String.format("Выдача пользователя c id = %d", id));
@@ -31,17 +48,52 @@ public class UserService {
     public User updateUser(User user) {
         Integer id = user.getId();
         log.debug(String.format("Обновление пользователя c id = %d", id));
-        return userStorage.update(validateName(user));
+        User saveUser = userStorage.update(validateName(user));
+        //Пользователь входит в списки друзей - меняется тег у всех списков
+        versions.usersChanged();
+        return saveUser;
     }
 
     public void removeUser(Integer id) {
         log.debug(String.format("Удаление пользователя c id = %d", id));
         userStorage.remove(id);
+        //Вместе с пользователем каскадно удаляются его дружбы, лайки и отзывы
+        versions.usersChanged();
+        versions.friendsChanged(id);
+        versions.likesChanged();
+        versions.reviewsChanged();
     }
 
-    public List<User> getUsers() {
-        log.debug("Выдача всех пользователей");
-        return userStorage.getAll();
+    public void forEachUser(Consumer<User> consumer) {
+        log.debug("Выдача всех пользователей потоком");
+        userStorage.forEachUser(consumer);
+    }
+
+    //Страницы по возрастанию id, курсор - закодированный id последнего выданного пользователя
+    public UserPage getUserPage(Integer limit, String cursor) {
+        log.debug("Выдача страницы пользователей");
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IncorrectParameterException(
+                    String.format("Значение параметра limit должно быть от 1 до %d", MAX_PAGE_SIZE));
+        }
+        List<User> users = userStorage.getUserPage(limit, decodeCursor(cursor));
+        if (users.size() < limit) {
+            return new UserPage(users, null);
+        }
+        String next = String.valueOf(users.get(users.size() - 1).getId());
+        return new UserPage(users,
+                Base64.getUrlEncoder().withoutPadding().encodeToString(next.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Integer decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException exp) {
+            throw new IncorrectParameterException("Неверно передан курсор");
+        }
     }
 
     public void addFriend(Integer id, Integer idFriend) {
@@ -49,6 +101,7 @@ public class UserService {
         isContainsUser(id);
         isContainsUser(idFriend);
         userStorage.addFriend(id, idFriend);
+        versions.friendsChanged(id);
         feedService.saveEventAddFriend(id, idFriend);
     }
 
@@ -57,15 +110,34 @@ public class UserService {
         isContainsUser(id);
         isContainsUser(idFriend);
         userStorage.removeFriend(id, idFriend);
+        versions.friendsChanged(id);
         feedService.saveEventRemoveFriend(id, idFriend);
     }
 
+    //Тег списка друзей считается по счетчикам в памяти, до обращения к БД
+    public String getFriendsTag(Integer id) {
+        isContainsUser(id);
+        return versions.friendsTag(id);
+    }
+
     public List<User> getFriends(Integer id) {
         log.debug(String.format("Выдача списка друзей пользователя c id = %d", id));
         isContainsUser(id);
         return userStorage.getFriends(id);
     }
 
+    //Без viewerId общие друзья считаются с самим владельцем списка
+    public List<FriendWithMutual> getFriendsWithMutual(Integer id, Integer viewerId) {
+        log.debug(String.format("Выдача списка друзей пользователя c id = %d с числом общих друзей", id));
+        isContainsUser(id);
+        if (viewerId == null) {
+            viewerId = id;
+        } else {
+            isContainsUser(viewerId);
+        }
+        return userStorage.getFriendsWithMutual(id, viewerId);
+    }
+
     public List<User> getCommonFriends(Integer id, Integer idOther) {
         log.debug(String.format("Поиск общих друзей пользователя c id = %d  и пользователя с id = %d", id, idOther));
         isContainsUser(id);
@@ -74,6 +146,27 @@ public class UserService {
         return userStorage.getCommonFriend(id, idOther);
     }
 
+    public List<FriendSuggestion> getFriendSuggestions(Integer id, Integer count) {
+        log.debug(String.format("Подбор возможных знакомых для пользователя c id = %d", id));
+        if (count <= 0 || count > MAX_SUGGESTIONS) {
+            throw new IncorrectParameterException(
+                    String.format("Значение параметра count должно быть от 1 до %d", MAX_SUGGESTIONS));
+        }
+        isContainsUser(id);
+        return userStorage.getFriendSuggestions(id, count);
+    }
+
+    public FriendPath getFriendPath(Integer id, Integer otherId, Integer maxDepth) {
+        log.debug(String.format("Поиск цепочки дружбы от пользователя c id = %d до пользователя с id = %d",
+                id, otherId));
+        if (maxDepth <= 0) {
+            throw new IncorrectParameterException("Значение параметра maxDepth должно быть больше нуля");
+        }
+        isContainsUser(id);
+        isContainsUser(otherId);
+        return userStorage.getFriendPath(id, otherId, maxDepth);
+    }
+
     public List<Event> getUserFeed(Integer id) {
         log.debug(String.format("Выдача ленты новостей пользователя c id = %d", id));
         isContainsUser(id);
@@ -91,4 +184,8 @@ public class UserService {
         userStorage.isContains(id);
     }
 
+    public Set<Integer> getExistingUsers(Collection<Integer> ids) {
+        return userStorage.getExistingIds(ids);
+    }
+
 }
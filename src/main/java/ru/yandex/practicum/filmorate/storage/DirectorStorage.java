@@ -19,10 +19,6 @@ public interface DirectorStorage {
 
     void setFilmDirector(Film film);
 
-    Film loadFilmDirector(Film film);
-
-    List<Film> loadFilmsDirector(List<Film> film);
-
     void isContains(Integer id);
 
 }
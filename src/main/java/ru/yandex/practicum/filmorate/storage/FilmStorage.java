@@ -1,10 +1,20 @@
 package ru.yandex.practicum.filmorate.storage;
 
 
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmCursor;
+import ru.yandex.practicum.filmorate.model.FilmField;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.RecommendedFilms;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
 
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 
 public interface FilmStorage {
@@ -19,19 +29,47 @@ public interface FilmStorage {
 
     List<Film> getAll();
 
+    void forEachFilm(Consumer<Film> consumer);
+
+    List<Film> getFilmPage(Integer size, Integer afterId);
+
+    List<Film> getFilmsByIds(List<Integer> ids);
+
     void addLike(Integer id, Integer idUser);
 
     void removeLike(Integer id, Integer idUser);
 
+    List<FilmLike> addLikes(List<FilmLike> likes);
+
     List<Film> getPopularFilm(Integer count, Integer genreId, Integer year);
 
+    List<Film> getPopularFilm(Integer count, Integer genreId, Integer year, Set<FilmField> fields);
+
+    List<Film> getPopularFilmPage(Integer size, Integer genreId, Integer year, FilmCursor after);
+
+    List<Film> getTrendingFilm(Integer count, TrendingPeriod period);
+
     List<Film> getFilmsByDirector(Integer directorId, String sortBy);
 
+    List<Film> getFilmsByDirector(Integer directorId, String sortBy, Set<FilmField> fields);
+
+    List<Film> getFilmsByDirectorPage(Integer directorId, String sortBy, Integer size, FilmCursor after);
+
     void isContains(Integer id);
 
-    List<Film> getUserRecommendations(Integer id);
+    Set<Integer> getExistingIds(Collection<Integer> ids);
+
+    List<Film> getUserRecommendations(Integer id, Integer count);
+
+    RecommendedFilms getMaterializedRecommendations(Integer id, Integer count);
 
     List<Film> getCommonFilms(Integer userId, Integer friendId);
 
     List<Film> getSearchedFilms(String query, String by);
+
+    List<Film> getSearchedFilms(String query, String by, Set<FilmField> fields);
+
+    List<Suggestion> getSuggestions(String query, String by, Integer count);
+
+    CacheStats getCacheStats();
 }
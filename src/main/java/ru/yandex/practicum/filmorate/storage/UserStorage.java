@@ -1,9 +1,15 @@
 package ru.yandex.practicum.filmorate.storage;
 
 
+import ru.yandex.practicum.filmorate.model.FriendPath;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.FriendWithMutual;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 
 public interface UserStorage {
@@ -18,6 +24,10 @@ public interface UserStorage {
 
     List<User> getAll();
 
+    void forEachUser(Consumer<User> consumer);
+
+    List<User> getUserPage(Integer size, Integer afterId);
+
     void addFriend(Integer id, Integer idFriend);
 
     void removeFriend(Integer id, Integer idFriend);
@@ -26,6 +36,14 @@ public interface UserStorage {
 
     List<User> getCommonFriend(Integer id, Integer idOther);
 
+    List<FriendWithMutual> getFriendsWithMutual(Integer id, Integer viewerId);
+
+    List<FriendSuggestion> getFriendSuggestions(Integer id, Integer count);
+
+    FriendPath getFriendPath(Integer id, Integer otherId, Integer maxDepth);
+
     void isContains(Integer id);
 
+    Set<Integer> getExistingIds(Collection<Integer> ids);
+
 }
@@ -52,8 +52,9 @@ create table IF NOT EXISTS USERS
 
 create table IF NOT EXISTS FILMS_LIKES
 (
-    FILM_ID INTEGER not null,
-    USER_ID INTEGER not null,
+    FILM_ID  INTEGER not null,
+    USER_ID  INTEGER not null,
+    LIKED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP(),
     constraint uq_likes UNIQUE (FILM_ID, USER_ID),
     constraint "FILMS_LIKES_fk"
         foreign key (FILM_ID) references FILMS ON DELETE CASCADE,
@@ -61,6 +62,16 @@ create table IF NOT EXISTS FILMS_LIKES
         foreign key (USER_ID) references USERS ON DELETE CASCADE
 );
 
+alter table FILMS_LIKES
+    add column IF NOT EXISTS LIKED_AT TIMESTAMP;
+
+update FILMS_LIKES
+set LIKED_AT = TIMESTAMP '1970-01-01 00:00:00'
+where LIKED_AT IS NULL;
+
+alter table FILMS_LIKES
+    alter column LIKED_AT SET DEFAULT CURRENT_TIMESTAMP();
+
 create table IF NOT EXISTS FRIENDS
 (
     USER_ID   INTEGER not null,
@@ -133,3 +144,24 @@ create table IF NOT EXISTS EVENTS
     constraint "EVENTS_USERS_fk"
         foreign key (USER_ID) references USERS ON DELETE CASCADE
 );
+
+create table IF NOT EXISTS FILMS_TRENDING
+(
+    FILM_ID         INTEGER          NOT NULL,
+    PERIOD          VARCHAR(16)      NOT NULL,
+    SCORE           DOUBLE PRECISION NOT NULL,
+    CHECKPOINT_TIME TIMESTAMP        NOT NULL,
+    constraint FILMS_TRENDING_PK
+        primary key (FILM_ID, PERIOD),
+    constraint "FILMS_TRENDING_FILMS_fk"
+        foreign key (FILM_ID) references FILMS ON DELETE CASCADE
+);
+
+create table IF NOT EXISTS FILMS_LIKES_REMOVED
+(
+    FILM_ID    INTEGER   NOT NULL,
+    LIKED_AT   TIMESTAMP NOT NULL,
+    REMOVED_AT TIMESTAMP NOT NULL,
+    constraint "FILMS_LIKES_REMOVED_FILMS_fk"
+        foreign key (FILM_ID) references FILMS ON DELETE CASCADE
+);
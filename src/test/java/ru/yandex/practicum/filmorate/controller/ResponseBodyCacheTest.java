@@ -0,0 +1,84 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+public class ResponseBodyCacheTest {
+
+    private final ResponseBodyCache cache = new ResponseBodyCache(new ObjectMapper(), 2);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    @DisplayName("Тело собирается один раз на версию и отдается сжатым, если клиент это принимает")
+    void cachedBodyPerVersion() throws IOException {
+        MockHttpServletRequest gzipRequest = new MockHttpServletRequest();
+        gzipRequest.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+
+        ResponseEntity<byte[]> plain = cache.get("/genres", "v1", this::load, new ServletWebRequest(
+                new MockHttpServletRequest()));
+        ResponseEntity<byte[]> gzip = cache.get("/genres", "v1", this::load, new ServletWebRequest(gzipRequest));
+
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals("[\"a\",\"b\"]", new String(plain.getBody(), StandardCharsets.UTF_8));
+        Assertions.assertNull(plain.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        Assertions.assertEquals("gzip", gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        Assertions.assertEquals("[\"a\",\"b\"]", new String(
+                new GZIPInputStream(new ByteArrayInputStream(gzip.getBody())).readAllBytes(), StandardCharsets.UTF_8));
+
+        //Новая версия данных - тело собирается заново
+        cache.get("/genres", "v2", this::load, new ServletWebRequest(new MockHttpServletRequest()));
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("Давно не запрошенный ответ вытесняется")
+    void evictsLeastRecentlyUsed() {
+        ServletWebRequest request = new ServletWebRequest(new MockHttpServletRequest());
+        cache.get("/a", "v", this::load, request);
+        cache.get("/b", "v", this::load, request);
+        cache.get("/a", "v", this::load, request);
+        cache.get("/c", "v", this::load, request);
+        Assertions.assertEquals(3, loads.get());
+
+        cache.get("/a", "v", this::load, request);
+        Assertions.assertEquals(3, loads.get());
+        cache.get("/b", "v", this::load, request);
+        Assertions.assertEquals(4, loads.get());
+    }
+
+    @Test
+    @DisplayName("У сжатого тела свой тег, а без кэша ответ собирается при каждом запросе")
+    void gzipTagAndUncachedBody() throws IOException {
+        MockHttpServletRequest gzipRequest = new MockHttpServletRequest();
+        gzipRequest.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        ServletWebRequest plainRequest = new ServletWebRequest(new MockHttpServletRequest());
+
+        Assertions.assertEquals("\"v1\"", ResponseBodyCache.etag("\"v1\"", plainRequest));
+        Assertions.assertEquals("\"v1-gz\"", ResponseBodyCache.etag("\"v1\"", new ServletWebRequest(gzipRequest)));
+
+        ResponseEntity<byte[]> gzip = cache.write(load(), new ServletWebRequest(gzipRequest));
+        Assertions.assertEquals("gzip", gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        Assertions.assertEquals("[\"a\",\"b\"]", new String(
+                new GZIPInputStream(new ByteArrayInputStream(gzip.getBody())).readAllBytes(), StandardCharsets.UTF_8));
+        cache.write(load(), plainRequest);
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    private List<String> load() {
+        loads.incrementAndGet();
+        return List.of("a", "b");
+    }
+}
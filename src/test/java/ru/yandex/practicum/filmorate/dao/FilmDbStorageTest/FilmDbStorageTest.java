@@ -6,22 +6,41 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.dao.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.dao.FilmLikesBuffer;
+import ru.yandex.practicum.filmorate.dao.TrendingDbStorage;
 import ru.yandex.practicum.filmorate.dao.GenreDbStorage;
 import ru.yandex.practicum.filmorate.exception.DuplicateLikeException;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
+import ru.yandex.practicum.filmorate.index.RecommendationStore;
+import ru.yandex.practicum.filmorate.index.TrendingIndex;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmField;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmPage;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.RecommendedFilms;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.SuggestionType;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -38,6 +57,10 @@ public class FilmDbStorageTest {
     private final GenreDbStorage genreDbStorage;
     private final DirectorDbStorage directorDbStorage;
     private final JdbcTemplate jdbcTemplate;
+    private final RecommendationStore recommendationStore;
+    private final FilmLikesBuffer filmLikesBuffer;
+    private final TrendingDbStorage trendingDbStorage;
+    private final FilmService filmService;
 
     @BeforeEach
     public void addFilm() {
@@ -74,7 +97,7 @@ public class FilmDbStorageTest {
 
     @Test
     public void getFilmById() {
-        Film film1 = directorDbStorage.loadFilmDirector(genreDbStorage.loadFilmGenre(filmDbStorage.get(1)));
+        Film film1 = filmDbStorage.get(1);
 
         assertEquals(1, film1.getId());
         assertEquals("film1", film1.getName());
@@ -88,7 +111,7 @@ public class FilmDbStorageTest {
         assertEquals(new LinkedHashSet<>(List.of(new Director(1, "Director"))),
                 film1.getDirectors());
 
-        Film film2 = genreDbStorage.loadFilmGenre(filmDbStorage.get(2));
+        Film film2 = filmDbStorage.get(2);
 
         assertEquals(2, film2.getId());
         assertEquals("film2", film2.getName());
@@ -99,7 +122,7 @@ public class FilmDbStorageTest {
         assertEquals("G", film2.getMpa().getName());
         assertEquals(new LinkedHashSet<>(), film2.getGenres());
 
-        Film film3 = genreDbStorage.loadFilmGenre(filmDbStorage.get(3));
+        Film film3 = filmDbStorage.get(3);
 
         assertEquals(3, film3.getId());
         assertEquals("film3", film3.getName());
@@ -123,13 +146,13 @@ public class FilmDbStorageTest {
 
     @Test
     public void updateFilmById() {
-        Film film1 = directorDbStorage.loadFilmDirector(genreDbStorage.loadFilmGenre(filmDbStorage.get(1)));
+        Film film1 = filmDbStorage.get(1);
         film1.setName("Update film1");
         filmDbStorage.update(film1);
         genreDbStorage.setFilmGenre(film1);
         directorDbStorage.setFilmDirector(film1);
 
-        Film filmUpdate = directorDbStorage.loadFilmDirector(genreDbStorage.loadFilmGenre(filmDbStorage.get(1)));
+        Film filmUpdate = filmDbStorage.get(1);
         assertEquals(1, filmUpdate.getId());
         assertEquals("Update film1", filmUpdate.getName());
         assertEquals("char1", filmUpdate.getDescription());
@@ -146,8 +169,7 @@ public class FilmDbStorageTest {
 
     @Test
     public void getAllFilms() {
-        List<Film> films = directorDbStorage.loadFilmsDirector(
-                genreDbStorage.loadFilmsGenre(filmDbStorage.getAll()));
+        List<Film> films = filmDbStorage.getAll();
         assertEquals(3, films.size());
         Film film1 = films.get(0);
         Film film2 = films.get(1);
@@ -212,8 +234,7 @@ public class FilmDbStorageTest {
         userDbStorage.add(createUser("rim@mail.ru", "Rim", "Rimus", "1992-07-21"));
 
         //Значение по дефолту - выдаем все 3 фильма - у всех 0 лайков
-        List<Film> films = directorDbStorage.loadFilmsDirector(
-                genreDbStorage.loadFilmsGenre(filmDbStorage.getPopularFilm(10, null, null)));
+        List<Film> films = filmDbStorage.getPopularFilm(10, null, null);
         assertEquals(3, films.size());
 
         Film film1 = films.get(0);
@@ -257,8 +278,7 @@ public class FilmDbStorageTest {
         filmDbStorage.addLike(2, 1);
 
         //1 популярный фильм - выдаем 1 фильм - у него 1 лайк
-        films = directorDbStorage.loadFilmsDirector(
-                genreDbStorage.loadFilmsGenre(filmDbStorage.getPopularFilm(1, null, null)));
+        films = filmDbStorage.getPopularFilm(1, null, null);
         assertEquals(1, films.size());
         film2 = films.get(0);
 
@@ -275,8 +295,7 @@ public class FilmDbStorageTest {
         filmDbStorage.removeLike(2, 1);
 
         //1 популярный фильм - выдаем 1 фильм - у всех 0 лайков - выдаем по самому маленькому id
-        films = directorDbStorage.loadFilmsDirector(
-                genreDbStorage.loadFilmsGenre(filmDbStorage.getPopularFilm(1, null, null)));
+        films = filmDbStorage.getPopularFilm(1, null, null);
         assertEquals(1, films.size());
 
         film1 = films.get(0);
@@ -294,6 +313,374 @@ public class FilmDbStorageTest {
 
     }
 
+    @Test
+    public void getPopularFilmWithFilters() {
+        userDbStorage.add(createUser("mail@mail.ru", "Nick Name", "name", "1990-08-20"));
+        filmDbStorage.addLike(3, 1);
+
+        //Фильтр по жанру - фильм с лайком первым, дальше по id
+        List<Film> films = filmDbStorage.getPopularFilm(10, 1, null);
+        assertEquals(2, films.size());
+        assertEquals(3, films.get(0).getId());
+        assertEquals(1, films.get(1).getId());
+
+        //Фильтр по году
+        films = filmDbStorage.getPopularFilm(10, null, 2001);
+        assertEquals(1, films.size());
+        assertEquals(2, films.get(0).getId());
+
+        //Фильтр по жанру и году
+        films = filmDbStorage.getPopularFilm(10, 2, 2002);
+        assertEquals(1, films.size());
+        assertEquals(3, films.get(0).getId());
+        assertEquals(0, filmDbStorage.getPopularFilm(10, 2, 2000).size());
+
+        //После удаления лайка фильмы снова идут по id
+        filmDbStorage.removeLike(3, 1);
+        films = filmDbStorage.getPopularFilm(10, 1, null);
+        assertEquals(1, films.get(0).getId());
+        assertEquals(3, films.get(1).getId());
+    }
+
+    @Test
+    public void addLikesBatch() {
+        userDbStorage.add(createUser("mail@mail.ru", "Nick Name", "name", "1990-08-20"));
+        userDbStorage.add(createUser("yandex@yandex.ru", "Mr Bin", "Bin", "1991-11-23"));
+        filmDbStorage.addLike(2, 1);
+
+        //Лайк 2-1 уже есть, а 3-2 повторяется внутри пакета - добавятся только два
+        List<FilmLike> added = filmDbStorage.addLikes(List.of(new FilmLike(2, 1), new FilmLike(3, 2),
+                new FilmLike(3, 2), new FilmLike(3, 1)));
+        assertEquals(List.of(new FilmLike(3, 2), new FilmLike(3, 1)), added);
+
+        List<Film> films = filmDbStorage.getPopularFilm(2, null, null);
+        assertEquals(3, films.get(0).getId());
+        assertEquals(2, films.get(1).getId());
+    }
+
+    @Test
+    public void getUserRecommendations() {
+        userDbStorage.add(createUser("mail@mail.ru", "Nick Name", "name", "1990-08-20"));
+        userDbStorage.add(createUser("yandex@yandex.ru", "Mr Bin", "Bin", "1991-11-23"));
+        userDbStorage.add(createUser("google@gmail.com", "Google", "Goo", "1992-01-01"));
+        filmDbStorage.addLike(1, 1);
+        filmDbStorage.addLike(1, 2);
+        filmDbStorage.addLike(2, 2);
+        //Третий пользователь не пересекается с первым по лайкам - его фильм не рекомендуется
+        filmDbStorage.addLike(3, 3);
+
+        List<Film> films = filmDbStorage.getUserRecommendations(1, 10);
+        assertEquals(1, films.size());
+        assertEquals(2, films.get(0).getId());
+
+        //Лайкнутый фильм из рекомендаций пропадает
+        filmDbStorage.addLike(2, 1);
+        assertEquals(0, filmDbStorage.getUserRecommendations(1, 10).size());
+    }
+
+    @Test
+    public void getMaterializedRecommendations() {
+        userDbStorage.add(createUser("mail@mail.ru", "Nick Name", "name", "1990-08-20"));
+        userDbStorage.add(createUser("yandex@yandex.ru", "Mr Bin", "Bin", "1991-11-23"));
+        filmDbStorage.addLike(1, 1);
+        filmDbStorage.addLike(1, 2);
+        filmDbStorage.addLike(2, 2);
+        filmDbStorage.addLike(3, 2);
+        recommendationStore.refreshAll();
+
+        RecommendedFilms recommendations = filmDbStorage.getMaterializedRecommendations(1, 10);
+        assertEquals(2, recommendations.getFilms().size());
+        assertEquals(recommendationStore.get(1).getComputedAt(), recommendations.getComputedAt());
+
+        //Лайк после пересчета: готовый список еще старый, но лайкнутый фильм из выдачи убирается
+        filmDbStorage.addLike(2, 1);
+        recommendations = filmDbStorage.getMaterializedRecommendations(1, 10);
+        assertEquals(1, recommendations.getFilms().size());
+        assertEquals(3, recommendations.getFilms().get(0).getId());
+    }
+
+    @Test
+    public void getSearchedFilms() {
+        userDbStorage.add(createUser("mail@mail.ru", "Nick Name", "name", "1990-08-20"));
+        filmDbStorage.addLike(3, 1);
+
+        //Без учета регистра, фильм с лайком первым
+        List<Film> films = filmDbStorage.getSearchedFilms("FiLm", "title");
+        assertEquals(3, films.size());
+        assertEquals(3, films.get(0).getId());
+        assertEquals(1, films.get(1).getId());
+
+        //Подстрока короче триграммы
+        assertEquals(1, filmDbStorage.getSearchedFilms("2", "title").size());
+
+        films = filmDbStorage.getSearchedFilms("recto", "director");
+        assertEquals(1, films.size());
+        assertEquals(1, films.get(0).getId());
+
+        //Совпадение и по названию, и по режиссёру - фильм в выдаче один раз
+        Film film = filmDbStorage.get(2);
+        film.setName("Director's cut");
+        filmDbStorage.update(film);
+        films = filmDbStorage.getSearchedFilms("director", "title,director");
+        assertEquals(2, films.size());
+        assertEquals(0, filmDbStorage.getSearchedFilms("film2", "title").size());
+    }
+
+    @Test
+    public void getSuggestions() {
+        userDbStorage.add(createUser("mail@mail.ru", "Nick Name", "name", "1990-08-20"));
+        filmDbStorage.addLike(2, 1);
+
+        //Сначала фильм с лайком, количество ограничено
+        List<Suggestion> suggestions = filmDbStorage.getSuggestions("FI", "title", 2);
+        assertEquals(2, suggestions.size());
+        assertEquals(2, suggestions.get(0).getId());
+        assertEquals("film2", suggestions.get(0).getName());
+        assertEquals(1, suggestions.get(1).getId());
+
+        //Режиссёр набирает лайки своих фильмов
+        filmDbStorage.addLike(1, 1);
+        suggestions = filmDbStorage.getSuggestions("dir", "title,director", 10);
+        assertEquals(1, suggestions.size());
+        assertEquals(SuggestionType.DIRECTOR, suggestions.get(0).getType());
+        assertEquals(1, suggestions.get(0).getLikes());
+
+        //Совпадение только с началом слова
+        assertEquals(0, filmDbStorage.getSuggestions("ilm", "title", 10).size());
+        assertEquals(0, filmService.getSuggestions(" ", "title,director", 10).size());
+    }
+
+    @Test
+    public void getFilmAggregate() {
+        //Жанры и режиссёры загружаются вместе с фильмом, без отдельных запросов
+        Film film3 = filmDbStorage.get(3);
+        assertEquals(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"), new Genre(2, "Драма"))),
+                film3.getGenres());
+        assertEquals(0, film3.getDirectors().size());
+
+        //Фильм с двумя жанрами и двумя режиссёрами не размножается в списке
+        jdbcTemplate.update("INSERT INTO DIRECTORS(DIRECTOR_NAME) VALUES(?)", "Second");
+        film3.setDirectors(new LinkedHashSet<>(List.of(new Director(1, "Director"), new Director(2, "Second"))));
+        directorDbStorage.setFilmDirector(film3);
+
+        List<Film> films = filmDbStorage.getAll();
+        assertEquals(3, films.size());
+        assertEquals(new LinkedHashSet<>(List.of(new Director(1, "Director"), new Director(2, "Second"))),
+                films.get(2).getDirectors());
+        assertEquals(2, films.get(2).getGenres().size());
+        assertEquals("G", films.get(2).getMpa().getName());
+    }
+
+    @Test
+    public void filmCache() {
+        filmDbStorage.get(2);
+        long hits = filmDbStorage.getCacheStats().getHits();
+
+        //Повторный запрос - из кэша, изменение отданной копии кэш не портит
+        Film film2 = filmDbStorage.get(2);
+        assertEquals(hits + 1, filmDbStorage.getCacheStats().getHits());
+        film2.getGenres().add(new Genre(3, "Мультфильм"));
+        assertEquals(0, filmDbStorage.get(2).getGenres().size());
+
+        //Смена жанров сбрасывает фильм из кэша
+        genreDbStorage.setFilmGenre(film2);
+        assertEquals(1, filmDbStorage.get(2).getGenres().size());
+
+        //Переименование режиссёра сбрасывает его фильмы
+        filmDbStorage.get(1);
+        directorDbStorage.updateDirector(new Director(1, "Renamed"));
+        assertEquals("Renamed", filmDbStorage.get(1).getDirectors().iterator().next().getName());
+    }
+
+    @Test
+    public void filmLikesWithoutFlush() {
+        userDbStorage.add(createUser("mail@mail.ru", "Nick Name", "name", "1990-08-20"));
+        filmDbStorage.get(2);
+
+        //Лайк до сброса буфера: и фильм из кэша, и выборка полей видят его сразу
+        filmDbStorage.addLike(2, 1);
+        assertEquals(1, filmDbStorage.get(2).getLikes());
+        List<Film> films = filmDbStorage.getSearchedFilms("film2", "title", EnumSet.of(FilmField.ID, FilmField.LIKES));
+        assertEquals(1, films.get(0).getLikes());
+        assertEquals(0, getLikesColumn(2));
+    }
+
+    @Test
+    public void referenceRegistry() {
+        assertEquals(6, genreDbStorage.getAllGenre().size());
+        assertEquals(true, genreDbStorage.isExists(6));
+        assertEquals(false, genreDbStorage.isExists(7));
+
+        //Режиссёр, добавленный в БД напрямую, находится и попадает в справочник
+        jdbcTemplate.update("INSERT INTO DIRECTORS(DIRECTOR_NAME) VALUES(?)", "Direct");
+        assertEquals("Direct", directorDbStorage.getDirectorById(2).getName());
+
+        directorDbStorage.removeDirector(2);
+        assertThrows(EntityNotFoundException.class, () -> directorDbStorage.getDirectorById(2));
+    }
+
+    @Test
+    public void streamAndPageFilms() {
+        List<Integer> streamed = new ArrayList<>();
+        filmDbStorage.forEachFilm(film -> streamed.add(film.getId()));
+        assertEquals(List.of(1, 2, 3), streamed);
+
+        List<Film> page = filmDbStorage.getFilmPage(2, null);
+        assertEquals(2, page.size());
+        assertEquals("Комедия", page.get(0).getGenres().iterator().next().getName());
+        page = filmDbStorage.getFilmPage(2, page.get(1).getId());
+        assertEquals(1, page.size());
+        assertEquals(3, page.get(0).getId());
+
+        assertThrows(IncorrectParameterException.class, () -> filmService.getFilmPage(1001, null));
+        assertThrows(IncorrectParameterException.class,
+                () -> filmService.getPopularFilmPage(1001, null, null, null));
+        assertThrows(IncorrectParameterException.class,
+                () -> filmService.getDirectorFilmPage(1, "year", 1001, null));
+    }
+
+    @Test
+    public void getFilmsWithFields() {
+        //Только id и название: описание и жанры из БД не читаются
+        List<Film> films = filmDbStorage.getSearchedFilms("film1", "title", EnumSet.of(FilmField.ID, FilmField.NAME));
+        assertEquals(1, films.size());
+        assertEquals("film1", films.get(0).getName());
+        assertEquals(null, films.get(0).getDescription());
+        assertEquals(0, films.get(0).getGenres().size());
+
+        films = filmDbStorage.getFilmsByDirector(1, "year", EnumSet.of(FilmField.ID, FilmField.DIRECTORS));
+        assertEquals("Director", films.get(0).getDirectors().iterator().next().getName());
+    }
+
+    @Test
+    public void getFilmsByIds() {
+        //Порядок как в запросе, несуществующий id просто пропускается
+        List<Film> films = filmDbStorage.getFilmsByIds(List.of(3, 99, 1));
+        assertEquals(2, films.size());
+        assertEquals(3, films.get(0).getId());
+        assertEquals(1, films.get(1).getId());
+        assertEquals("Комедия", films.get(1).getGenres().iterator().next().getName());
+    }
+
+    @Test
+    public void flushLikesBuffer() {
+        userDbStorage.add(createUser("mail@mail.ru", "Nick Name", "name", "1990-08-20"));
+        userDbStorage.add(createUser("yandex@yandex.ru", "Mr Bin", "Bin", "1991-11-23"));
+        filmDbStorage.addLike(2, 1);
+        filmDbStorage.addLike(2, 2);
+        filmDbStorage.addLike(3, 1);
+        filmDbStorage.removeLike(3, 1);
+
+        //После сброса счетчик в БД совпадает с FILMS_LIKES
+        filmLikesBuffer.flush();
+        assertEquals(2, getLikesColumn(2));
+        assertEquals(0, getLikesColumn(3));
+    }
+
+    @Test
+    public void flushLikesBufferAfterFailure() {
+        //Первый batch-запрос падает, второй проходит
+        boolean[] failed = {false};
+        FilmLikesBuffer buffer = new FilmLikesBuffer(new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                if (!failed[0]) {
+                    failed[0] = true;
+                    throw new DataAccessResourceFailureException("БД недоступна");
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        });
+        buffer.add(1, 2);
+        buffer.add(2, 1);
+
+        buffer.flush();
+        assertEquals(0, getLikesColumn(1));
+
+        //Изменения вернулись в буфер и применяются вместе с новыми
+        buffer.add(1, 1);
+        buffer.flush();
+        assertEquals(3, getLikesColumn(1));
+        assertEquals(1, getLikesColumn(2));
+    }
+
+    @Test
+    public void restoreTrendingAfterRemovedLikes() throws InterruptedException {
+        userDbStorage.add(createUser("mail@mail.ru", "Nick Name", "name", "1990-08-20"));
+        userDbStorage.add(createUser("yandex@yandex.ru", "Mr Bin", "Bin", "1991-11-23"));
+        filmDbStorage.addLike(1, 1);
+        filmDbStorage.addLike(2, 1);
+        filmDbStorage.addLike(2, 2);
+        trendingDbStorage.checkpoint();
+
+        //Изменения после сохранения должны быть позже него хотя бы на миллисекунду
+        Thread.sleep(5);
+        filmDbStorage.removeLike(2, 1);
+        userDbStorage.remove(2);
+        userDbStorage.add(createUser("rim@mail.ru", "Rim", "Rimus", "1992-07-21"));
+        filmDbStorage.addLike(3, 3);
+
+        //Восстановление в чистый индекс: копия минус удаленные лайки плюс новые
+        TrendingIndex restored = new TrendingIndex();
+        new TrendingDbStorage(jdbcTemplate, restored).loadTrendingIndex();
+        for (TrendingPeriod period : TrendingPeriod.values()) {
+            assertEquals(Set.of(1, 3), new HashSet<>(restored.getTop(period, 10)));
+        }
+
+        //Удаления, учтенные в новой копии, больше не хранятся
+        trendingDbStorage.checkpoint();
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM FILMS_LIKES_REMOVED", Integer.class));
+    }
+
+    @Test
+    public void popularAndDirectorPages() {
+        userDbStorage.add(createUser("mail@mail.ru", "Nick Name", "name", "1990-08-20"));
+        userDbStorage.add(createUser("yandex@yandex.ru", "Mr Bin", "Bin", "1991-11-23"));
+        for (int id = 2; id <= 3; id++) {
+            Film film = filmDbStorage.get(id);
+            film.setDirectors(new LinkedHashSet<>(List.of(new Director(1, "Director"))));
+            directorDbStorage.setFilmDirector(film);
+        }
+        filmDbStorage.addLike(3, 1);
+        filmDbStorage.addLike(3, 2);
+        filmDbStorage.addLike(2, 1);
+        filmLikesBuffer.flush();
+
+        assertEquals(List.of(3, 2, 1), getAllPages(cursor -> filmService.getPopularFilmPage(2, null, null, cursor)));
+        assertEquals(List.of(3, 1), getAllPages(cursor -> filmService.getPopularFilmPage(1, 1, null, cursor)));
+        assertEquals(List.of(3, 2, 1), getAllPages(cursor -> filmService.getDirectorFilmPage(1, "likes", 2, cursor)));
+        assertEquals(List.of(1, 2, 3), getAllPages(cursor -> filmService.getDirectorFilmPage(1, "year", 1, cursor)));
+
+        //Одинаковое количество лайков: внутри группы по id, курсор не теряет и не повторяет фильмы
+        filmDbStorage.removeLike(2, 1);
+        filmLikesBuffer.flush();
+        assertEquals(List.of(3, 1, 2), getAllPages(cursor -> filmService.getPopularFilmPage(1, null, null, cursor)));
+        assertEquals(List.of(3, 1, 2), getAllPages(cursor -> filmService.getDirectorFilmPage(1, "likes", 1, cursor)));
+
+        //Фильм, поднявшийся ниже выданного курсора, на следующей странице не теряется
+        FilmPage first = filmService.getPopularFilmPage(1, null, null, null);
+        filmDbStorage.addLike(2, 1);
+        FilmPage second = filmService.getPopularFilmPage(1, null, null, first.getNextCursor());
+        assertEquals(3, first.getFilms().get(0).getId());
+        assertEquals(2, second.getFilms().get(0).getId());
+    }
+
+    //Все страницы подряд: каждая следующая запрашивается по курсору предыдущей
+    private List<Integer> getAllPages(Function<String, FilmPage> pages) {
+        List<Integer> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            FilmPage page = pages.apply(cursor);
+            page.getFilms().forEach(film -> ids.add(film.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private int getLikesColumn(int filmId) {
+        return jdbcTemplate.queryForObject("SELECT LIKES FROM FILMS WHERE FILM_ID = ?", Integer.class, filmId);
+    }
+
     private Film createFilm(String name, String description, String releaseDate, int duration, Mpa mpa,
                             LinkedHashSet<Genre> genres, LinkedHashSet<Director> directors) {
         Film film = new Film();
@@ -6,13 +6,22 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.model.DeletionJob;
+import ru.yandex.practicum.filmorate.model.DeletionJobStatus;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserDeletionService;
+import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -24,6 +33,8 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 public class UserDbStorageTest {
 
     private final UserStorage userDbStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final UserDeletionService userDeletionService;
 
     @BeforeEach
     public void addUser() {
@@ -102,6 +113,25 @@ public class UserDbStorageTest {
 
     }
 
+    @Test
+    public void removeUserWithMarksAndLikes() {
+        jdbcTemplate.update("INSERT INTO FILMS(FILM_NAME, FILM_DESCRIPTION, RELEASE_DATE, DURATION, MPA_ID, LIKES) " +
+                "VALUES ('film', 'description', '2000-01-01', 100, 1, 2)");
+        jdbcTemplate.update("INSERT INTO FILMS_LIKES(FILM_ID, USER_ID) VALUES (1, 1), (1, 2)");
+        jdbcTemplate.update("INSERT INTO REVIEWS(CONTENT, IS_POSITIVE, USER_ID, FILM_ID, USEFUL) " +
+                "VALUES ('good', TRUE, 2, 1, 1), ('bad', FALSE, 3, 1, -1)");
+        jdbcTemplate.update("INSERT INTO REVIEWS_MARK(REVIEW_ID, USER_ID, MARK) VALUES (1, 1, 1), (2, 1, -1)");
+        userDbStorage.addFriend(2, 1);
+
+        userDbStorage.remove(1);
+
+        //Оценки и лайк удаленного пользователя сняты со счетчиков, он пропал из чужих списков друзей
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT USEFUL FROM REVIEWS WHERE REVIEW_ID = 1", Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT USEFUL FROM REVIEWS WHERE REVIEW_ID = 2", Integer.class));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT LIKES FROM FILMS WHERE FILM_ID = 1", Integer.class));
+        assertEquals(0, userDbStorage.getFriends(2).size());
+    }
+
     @Test
     public void operationWithFriend() {
         List<User> friends = userDbStorage.getFriends(1);
@@ -147,6 +177,52 @@ public class UserDbStorageTest {
 
     }
 
+    @Test
+    public void deletionJob() throws InterruptedException {
+        //Повторный id учитывается один раз, несуществующий - в notFound
+        DeletionJob job = awaitFinished(userDeletionService, userDeletionService.startJob(List.of(1, 3, 99, 1)));
+
+        assertEquals(DeletionJobStatus.COMPLETED, job.getStatus());
+        assertEquals(3, job.getTotal());
+        assertEquals(3, job.getProcessed());
+        assertEquals(2, job.getDeleted());
+        assertEquals(1, job.getNotFound());
+        assertEquals(0, job.getFailed());
+        assertEquals(2, userDbStorage.get(2).getId());
+        assertThrows(EntityNotFoundException.class, () -> userDbStorage.get(1));
+        assertThrows(EntityNotFoundException.class, () -> userDbStorage.get(3));
+        assertThrows(EntityNotFoundException.class, () -> userDeletionService.getJob(job.getJobId() + 1));
+    }
+
+    @Test
+    public void deletionJobFailure() throws InterruptedException {
+        //Проверка наличия пачки падает - задача не зависает в RUNNING, а завершается с FAILED
+        UserService failingService = new UserService(null, null, null) {
+            @Override
+            public Set<Integer> getExistingUsers(Collection<Integer> ids) {
+                throw new DataAccessResourceFailureException("БД недоступна");
+            }
+        };
+        UserDeletionService service = new UserDeletionService(failingService, 100, 0);
+        try {
+            DeletionJob job = awaitFinished(service, service.startJob(List.of(1, 2)));
+
+            assertEquals(DeletionJobStatus.FAILED, job.getStatus());
+            assertEquals(0, job.getProcessed());
+            assertEquals(1, userDbStorage.get(1).getId());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static DeletionJob awaitFinished(UserDeletionService service, DeletionJob job)
+            throws InterruptedException {
+        for (int i = 0; i < 500 && job.getFinishedAt() == null; i++) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return service.getJob(job.getJobId());
+    }
+
     public static User createUser(String email, String login, String name, String birthday) {
         User user = new User();
         user.setEmail(email);
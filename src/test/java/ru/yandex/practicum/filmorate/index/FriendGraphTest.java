@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class FriendGraphTest {
+
+    @Test
+    @DisplayName("Загрузка с повторами, добавление, общие друзья и удаление пользователя")
+    void friendsAndCommonFriends() {
+        FriendGraph graph = new FriendGraph();
+        FriendGraph.Edges edges = new FriendGraph.Edges();
+        edges.add(1, 5);
+        edges.add(1, 3);
+        edges.add(1, 3);
+        edges.add(2, 3);
+        graph.load(edges);
+
+        Assertions.assertEquals("[3, 5]", Arrays.toString(graph.getFriends(1)));
+        Assertions.assertFalse(graph.add(1, 3));
+        Assertions.assertTrue(graph.add(2, 5));
+        Assertions.assertTrue(graph.add(2, 100));
+        Assertions.assertEquals("[3, 5, 100]", Arrays.toString(graph.getFriends(2)));
+        Assertions.assertEquals("[3, 5]", Arrays.toString(graph.getCommonFriends(1, 2)));
+        Assertions.assertEquals("[]", Arrays.toString(graph.getCommonFriends(1, 42)));
+
+        graph.remove(1, 5);
+        Assertions.assertEquals("[3]", Arrays.toString(graph.getCommonFriends(1, 2)));
+
+        //Удаленный пользователь пропадает и из своих, и из чужих списков
+        graph.removeUser(3);
+        Assertions.assertEquals("[]", Arrays.toString(graph.getFriends(1)));
+        Assertions.assertEquals("[5, 100]", Arrays.toString(graph.getFriends(2)));
+        Assertions.assertFalse(graph.contains(2, 3));
+    }
+
+    @Test
+    @DisplayName("Друзья друзей по числу общих друзей, без себя и уже добавленных")
+    void suggestions() {
+        FriendGraph graph = new FriendGraph();
+        graph.add(1, 2);
+        graph.add(1, 3);
+        graph.add(1, 4);
+        graph.add(2, 5);
+        graph.add(3, 5);
+        graph.add(3, 6);
+        graph.add(4, 6);
+        graph.add(4, 7);
+        graph.add(2, 1);
+        graph.add(2, 4);
+
+        long noLimit = Long.MAX_VALUE;
+        Assertions.assertEquals("[5:2, 6:2, 7:1]", format(graph.getSuggestions(1, 10, 100, 100, noLimit)));
+        Assertions.assertEquals("[5:2]", format(graph.getSuggestions(1, 1, 100, 100, noLimit)));
+        //Только первый друг (2): его друзья 1 и 4 - это сам пользователь и уже друг
+        Assertions.assertEquals("[5:1]", format(graph.getSuggestions(1, 10, 1, 100, noLimit)));
+        //Время вышло до начала обхода
+        Assertions.assertEquals("[]", format(graph.getSuggestions(1, 10, 100, 100, System.nanoTime() - 1)));
+    }
+
+    @Test
+    @DisplayName("Число общих друзей для каждого друга одним проходом")
+    void countCommonFriends() {
+        FriendGraph graph = new FriendGraph();
+        graph.add(1, 2);
+        graph.add(1, 3);
+        graph.add(1, 4);
+        graph.add(2, 3);
+        graph.add(2, 4);
+        graph.add(3, 4);
+
+        Assertions.assertEquals("[2, 1, 0]", Arrays.toString(graph.countCommonFriends(1, graph.getFriends(1))));
+        Assertions.assertEquals("[0]", Arrays.toString(graph.countCommonFriends(1, new int[]{42})));
+    }
+
+    @Test
+    @DisplayName("Кратчайшая цепочка по направлению дружбы с ограничением глубины и времени")
+    void path() {
+        FriendGraph graph = new FriendGraph();
+        graph.add(1, 2);
+        graph.add(2, 3);
+        graph.add(3, 4);
+        graph.add(4, 5);
+        graph.add(1, 6);
+        graph.add(6, 5);
+        graph.add(7, 1);
+
+        long noLimit = Long.MAX_VALUE;
+        Assertions.assertEquals("[1, 6, 5]", Arrays.toString(graph.getPath(1, 5, 6, noLimit).getUserIds()));
+        Assertions.assertEquals("[2, 3, 4, 5]", Arrays.toString(graph.getPath(2, 5, 6, noLimit).getUserIds()));
+        Assertions.assertEquals("[1]", Arrays.toString(graph.getPath(1, 1, 6, noLimit).getUserIds()));
+        //Дружба направленная: от 5 к 1 связей нет
+        Assertions.assertEquals(0, graph.getPath(5, 1, 6, noLimit).getUserIds().length);
+        //Цепочка длиннее допустимой глубины
+        Assertions.assertEquals(0, graph.getPath(2, 5, 2, noLimit).getUserIds().length);
+        Assertions.assertFalse(graph.getPath(2, 5, 2, noLimit).isInterrupted());
+        Assertions.assertTrue(graph.getPath(7, 5, 6, System.nanoTime() - 1).isInterrupted());
+    }
+
+    private static String format(List<FriendGraph.Suggestion> suggestions) {
+        return suggestions.stream()
+                .map(suggestion -> suggestion.getUserId() + ":" + suggestion.getMutualFriends())
+                .collect(Collectors.toList())
+                .toString();
+    }
+}
@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IdSetTest {
+
+    @Test
+    @DisplayName("До границы ответ из памяти, выше границы - из БД с запоминанием")
+    void containsWithDatabaseFallback() {
+        IdSet ids = new IdSet();
+        ids.load(List.of(1, 2, 70));
+        AtomicInteger queries = new AtomicInteger();
+
+        Assertions.assertTrue(ids.contains(70, id -> fail(queries)));
+        Assertions.assertFalse(ids.contains(3, id -> fail(queries)));
+        Assertions.assertFalse(ids.contains(0, id -> fail(queries)));
+        Assertions.assertEquals(0, queries.get());
+
+        //id 200 есть в БД, но индекс о нем не знает
+        Assertions.assertTrue(ids.contains(200, id -> queries.incrementAndGet() > 0));
+        Assertions.assertTrue(ids.contains(200, id -> fail(queries)));
+        Assertions.assertFalse(ids.contains(150, id -> fail(queries)));
+        Assertions.assertFalse(ids.contains(201, id -> queries.incrementAndGet() < 0));
+        Assertions.assertEquals(2, queries.get());
+
+        ids.remove(70);
+        ids.add(1000);
+        Assertions.assertFalse(ids.contains(70, id -> fail(queries)));
+        Assertions.assertTrue(ids.contains(1000, id -> fail(queries)));
+        Assertions.assertTrue(ids.contains(2, id -> fail(queries)));
+    }
+
+    private static boolean fail(AtomicInteger queries) {
+        queries.incrementAndGet();
+        return true;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+public class IntBitmapTest {
+
+    @Test
+    @DisplayName("Добавление и удаление с переходом массив -> битовая карта -> массив")
+    void addAndRemove() {
+        IntBitmap bitmap = new IntBitmap();
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(bitmap.add(i * 3));
+        }
+        Assertions.assertFalse(bitmap.add(3));
+        Assertions.assertEquals(10_000, bitmap.cardinality());
+        Assertions.assertTrue(bitmap.contains(29_997));
+        Assertions.assertFalse(bitmap.contains(29_998));
+
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(bitmap.remove(i * 3));
+        }
+        Assertions.assertFalse(bitmap.remove(3));
+        Assertions.assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    @DisplayName("AND и AND-NOT совпадают с операциями над обычными множествами")
+    void andAndNot() {
+        Random random = new Random(42);
+        IntBitmap first = new IntBitmap();
+        IntBitmap second = new IntBitmap();
+        TreeSet<Integer> firstSet = new TreeSet<>();
+        TreeSet<Integer> secondSet = new TreeSet<>();
+        //Плотный диапазон в начале и редкие значения дальше - чтобы попасть в оба вида контейнеров
+        for (int i = 0; i < 20_000; i++) {
+            int value = random.nextBoolean() ? random.nextInt(30_000) : random.nextInt(5_000_000);
+            first.add(value);
+            firstSet.add(value);
+            value = random.nextBoolean() ? random.nextInt(30_000) : random.nextInt(5_000_000);
+            second.add(value);
+            secondSet.add(value);
+        }
+
+        TreeSet<Integer> common = new TreeSet<>(firstSet);
+        common.retainAll(secondSet);
+        TreeSet<Integer> difference = new TreeSet<>(firstSet);
+        difference.removeAll(secondSet);
+
+        Assertions.assertArrayEquals(common.stream().mapToInt(Integer::intValue).toArray(),
+                first.and(second).toArray());
+        Assertions.assertEquals(common.size(), first.andCardinality(second));
+        Assertions.assertArrayEquals(difference.stream().mapToInt(Integer::intValue).toArray(),
+                first.andNot(second).toArray());
+    }
+}
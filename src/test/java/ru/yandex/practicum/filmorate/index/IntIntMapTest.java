@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class IntIntMapTest {
+
+    @Test
+    @DisplayName("Запись, перезапись и чтение с ростом таблицы")
+    void putAndGet() {
+        IntIntMap map = new IntIntMap(2);
+        for (int i = 1; i <= 10_000; i++) {
+            map.put(i * 3, i);
+        }
+        map.put(3, 0);
+        Assertions.assertEquals(10_000, map.size());
+        Assertions.assertTrue(map.containsKey(3));
+        Assertions.assertEquals(0, map.get(3, -1));
+        Assertions.assertEquals(10_000, map.get(30_000, -1));
+        Assertions.assertFalse(map.containsKey(4));
+        Assertions.assertEquals(-1, map.get(4, -1));
+
+        //После нескольких ростов таблицы каждое значение осталось при своем ключе
+        for (int i = 2; i <= 10_000; i++) {
+            Assertions.assertEquals(i, map.get(i * 3, -1));
+        }
+        Assertions.assertFalse(map.containsKey(0));
+    }
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class IntObjectMapTest {
+
+    @Test
+    @DisplayName("Запись, перезапись и чтение с ростом таблицы")
+    void putAndGet() {
+        IntObjectMap<String> map = new IntObjectMap<>(2);
+        for (int i = 1; i <= 10_000; i++) {
+            map.put(i * 7, "v" + i);
+        }
+        map.put(7, "first");
+        Assertions.assertEquals(10_000, map.size());
+        Assertions.assertEquals("first", map.get(7));
+        Assertions.assertEquals("v10000", map.get(70_000));
+        Assertions.assertNull(map.get(8));
+        Assertions.assertNull(map.get(0));
+    }
+}
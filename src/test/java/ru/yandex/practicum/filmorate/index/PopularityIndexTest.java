@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class PopularityIndexTest {
+
+    @Test
+    @DisplayName("Изменение лайков, года и жанров переносит фильм без потери и повторов")
+    void replaceKeepsFilmInSets() {
+        PopularityIndex index = new PopularityIndex();
+        index.load(Map.of(1, 2, 2, 1), Map.of(1, 2000, 2, 2000, 3, 2001),
+                Map.of(1, Set.of(1), 2, Set.of(1, 2)));
+
+        Assertions.assertEquals(List.of(1, 2, 3), index.getTop(10, null, null));
+
+        index.changeLikes(2, 2);
+        Assertions.assertEquals(List.of(2, 1, 3), index.getTop(10, null, null));
+        Assertions.assertEquals(List.of(2, 1), index.getTop(10, 1, null));
+        Assertions.assertEquals(List.of(2), index.getTop(10, 2, 2000));
+
+        //Лайки не меняются - фильм должен остаться в общем рейтинге и в жанре, который у него остался
+        index.updateYear(1, 2001);
+        index.setGenres(1, List.of(1, 2));
+        Assertions.assertEquals(List.of(2, 1, 3), index.getTop(10, null, null));
+        Assertions.assertEquals(List.of(2, 1), index.getTop(10, 1, null));
+        Assertions.assertEquals(List.of(2, 1), index.getTop(10, 2, null));
+        Assertions.assertEquals(List.of(1, 3), index.getTop(10, null, 2001));
+        Assertions.assertEquals(List.of(2), index.getTop(10, null, 2000));
+
+        index.setGenres(1, List.of(2));
+        Assertions.assertEquals(List.of(2), index.getTop(10, 1, null));
+        Assertions.assertEquals(List.of(1, 3), index.getTopAfter(10, null, null, 3, 2));
+    }
+}
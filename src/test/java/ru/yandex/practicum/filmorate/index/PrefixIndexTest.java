@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class PrefixIndexTest {
+
+    @Test
+    @DisplayName("Совпадения по началу слова те же, что и при переборе, до и после слияния добавки с основой")
+    void matchesAcrossMerges() {
+        Random random = new Random(7);
+        String[] words = {"ёж", "еж", "тень", "темный", "рыцарь", "игра", "игрок", "ночь", "начало"};
+        PrefixIndex index = new PrefixIndex();
+        Map<Integer, String> names = new HashMap<>();
+        for (int id = 1; id <= 300; id++) {
+            names.put(id, name(random, words));
+        }
+        index.load(names);
+
+        //Изменений больше порога добавки - основа пересобирается несколько раз
+        for (int step = 0; step < 2_000; step++) {
+            int id = 1 + random.nextInt(400);
+            if (random.nextInt(4) == 0) {
+                index.remove(id);
+                names.remove(id);
+            } else {
+                String name = name(random, words);
+                index.put(id, name);
+                names.put(id, name);
+            }
+            if (step % 97 == 0) {
+                for (String prefix : new String[]{"е", "те", "игр", "н", "рыцарь т", "x"}) {
+                    Assertions.assertEquals(bruteForce(names, prefix), matches(index, prefix));
+                }
+            }
+        }
+        Assertions.assertEquals(names.get(5), index.getName(5));
+    }
+
+    private static String name(Random random, String[] words) {
+        return words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)];
+    }
+
+    private static Set<Integer> matches(PrefixIndex index, String prefix) {
+        Set<Integer> ids = new TreeSet<>();
+        index.forEachMatch(prefix, ids::add);
+        return ids;
+    }
+
+    private static Set<Integer> bruteForce(Map<Integer, String> names, String prefix) {
+        Set<Integer> ids = new TreeSet<>();
+        names.forEach((id, name) -> {
+            String normalized = SearchIndex.normalize(name);
+            for (int i = 0; i < normalized.length(); i++) {
+                boolean wordStart = i == 0 || normalized.charAt(i - 1) == ' ';
+                if (wordStart && normalized.startsWith(prefix, i)) {
+                    ids.add(id);
+                }
+            }
+        });
+        return ids;
+    }
+}
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.TrendingPeriod;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TrendingIndexTest {
+
+    private static final long HOUR = TrendingPeriod.HOUR.getDuration().toMillis();
+
+    @Test
+    @DisplayName("Старые лайки весят меньше, и тем сильнее, чем короче горизонт")
+    void decay() {
+        TrendingIndex index = new TrendingIndex();
+        long now = System.currentTimeMillis();
+        index.addLike(1, now - 2 * HOUR);
+        index.addLike(1, now - 2 * HOUR);
+        index.addLike(2, now);
+
+        //За час два лайка двухчасовой давности весят 2/e^2 < 1, за сутки - почти 2
+        Assertions.assertEquals(List.of(2, 1), index.getTop(TrendingPeriod.HOUR, 10));
+        Assertions.assertEquals(List.of(1, 2), index.getTop(TrendingPeriod.DAY, 10));
+
+        Map<Integer, Double> scores = index.getScores(TrendingPeriod.HOUR, now);
+        Assertions.assertTrue(Math.abs(scores.get(1) - 2 * Math.exp(-2)) < 1e-9);
+        Assertions.assertTrue(Math.abs(scores.get(2) - 1) < 1e-9);
+
+        //Сдвиг опорной точки порядок и значения не меняет
+        index.rescale(now + HOUR);
+        Assertions.assertEquals(List.of(2, 1), index.getTop(TrendingPeriod.HOUR, 10));
+        scores = index.getScores(TrendingPeriod.HOUR, now);
+        Assertions.assertTrue(Math.abs(scores.get(2) - 1) < 1e-9);
+    }
+
+    @Test
+    @DisplayName("Удаление лайка с тем же временем убирает его вклад целиком")
+    void removeLike() {
+        TrendingIndex index = new TrendingIndex();
+        long now = System.currentTimeMillis();
+        index.addLike(1, now - HOUR / 2);
+        index.addLike(2, now);
+        index.addLike(2, now - HOUR);
+
+        index.removeLike(2, now);
+        Assertions.assertEquals(List.of(1, 2), index.getTop(TrendingPeriod.HOUR, 10));
+
+        index.removeLike(2, now - HOUR);
+        Assertions.assertEquals(List.of(1), index.getTop(TrendingPeriod.HOUR, 10));
+        Assertions.assertFalse(index.getScores(TrendingPeriod.DAY, now).containsKey(2));
+
+        index.removeFilm(1);
+        Assertions.assertEquals(List.of(), index.getTop(TrendingPeriod.WEEK, 10));
+    }
+
+    @Test
+    @DisplayName("Чтение топа во время сдвига опорной точки и новых лайков видит все фильмы без повторов")
+    void topDuringRescale() throws InterruptedException {
+        TrendingIndex index = new TrendingIndex();
+        long now = System.currentTimeMillis();
+        for (int filmId = 1; filmId <= 3; filmId++) {
+            index.addLike(filmId, now);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= 2_000; i++) {
+                index.rescale(now + i);
+                index.addLike(1 + i % 3, now + i);
+            }
+            done.set(true);
+        });
+        writer.start();
+        while (!done.get()) {
+            List<Integer> top = index.getTop(TrendingPeriod.MONTH, 10);
+            Assertions.assertEquals(3, top.size());
+            Assertions.assertEquals(3, new HashSet<>(top).size());
+        }
+        writer.join();
+    }
+}
@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class VersionRegistryTest {
+
+    @Test
+    @DisplayName("Тег меняется только при изменениях, от которых зависит ответ")
+    void tagsFollowWrites() {
+        VersionRegistry versions = new VersionRegistry();
+        String film = versions.filmTag(1);
+        String popular = versions.popularTag();
+        String friends = versions.friendsTag(1);
+
+        Assertions.assertTrue(film.startsWith("\"") && film.endsWith("\""));
+        Assertions.assertEquals(film, versions.filmTag(1));
+
+        versions.likesChanged();
+        Assertions.assertEquals(film, versions.filmTag(1));
+        Assertions.assertNotEquals(popular, versions.popularTag());
+
+        versions.filmChanged(2);
+        Assertions.assertEquals(film, versions.filmTag(1));
+        popular = versions.popularTag();
+        versions.directorsChanged();
+        Assertions.assertNotEquals(film, versions.filmTag(1));
+        Assertions.assertNotEquals(popular, versions.popularTag());
+
+        versions.friendsChanged(2);
+        Assertions.assertEquals(friends, versions.friendsTag(1));
+        versions.usersChanged();
+        Assertions.assertNotEquals(friends, versions.friendsTag(1));
+
+        //Удаленный фильм не возвращается к тегу, выданному до изменений
+        String before = versions.filmTag(3);
+        versions.filmChanged(3);
+        Assertions.assertNotEquals(before, versions.filmTag(3));
+    }
+}